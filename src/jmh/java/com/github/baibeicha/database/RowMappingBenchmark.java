@@ -0,0 +1,131 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Column;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.annotation.Transient;
+import com.github.baibeicha.reflection.util.AnnotationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Строк в секунду при чтении сущности: {@code reflection} - прежнее чтение через поиск полей
+ * по аннотациям и {@link Field#set} для каждой строки, {@code compiled} - {@link AutoRowMapper},
+ * привязанный к результату, с заранее вычисленными индексами колонок и доступом через MethodHandle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    private static final int ROWS = 1000;
+
+    @Entity
+    @Table(name = "person")
+    public static class Person {
+        @Id
+        Long id;
+        @Column(name = "first_name")
+        String firstName;
+        @Column(name = "last_name")
+        String lastName;
+        String email;
+        int age;
+        long balance;
+        double rating;
+        boolean active;
+        LocalDateTime created;
+        @Transient
+        String display;
+    }
+
+    private Database database;
+    private List<Map<String, Object>> rows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        TestDriver.install();
+        database = new Database(TestDriver.dataSource(), 1);
+        rows = new ArrayList<>(ROWS);
+        Timestamp created = Timestamp.valueOf("2024-01-02 03:04:05");
+        for (long i = 0; i < ROWS; i++) {
+            rows.add(TestDriver.row("id", i, "first_name", "first" + i, "last_name", "last" + i,
+                    "email", i + "@example.com", "age", (int) (i % 90), "balance", i * 100,
+                    "rating", i / 10.0, "active", i % 2 == 0, "created", created));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void reflection(Blackhole blackhole) throws Exception {
+        ResultSet rs = TestDriver.resultSet(null, rows);
+        while (rs.next()) {
+            blackhole.consume(mapReflectively(rs));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void compiled(Blackhole blackhole) throws Exception {
+        ResultSet rs = TestDriver.resultSet(null, rows);
+        RowMapper<Person> mapper = database.bindMapper(Person.class, rs.getMetaData(), new RelationLoader(database, null));
+        while (rs.next()) {
+            blackhole.consume(mapper.mapRow(rs));
+        }
+    }
+
+    /**
+     * Чтение строки так, как AutoRowMapper делал до компиляции метаданных.
+     */
+    private static Person mapReflectively(ResultSet rs) throws Exception {
+        Person instance = Person.class.getDeclaredConstructor().newInstance();
+        for (Field field : Person.class.getDeclaredFields()) {
+            if (AnnotationUtils.isAnnotated(field, Transient.class)) {
+                continue;
+            }
+            field.setAccessible(true);
+            String column = AnnotationUtils.isAnnotated(field, Column.class) ?
+                    AnnotationUtils.findAnnotation(field, Column.class).name() : field.getName();
+            Object value = rs.getObject(column);
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof Timestamp timestamp && field.getType() == LocalDateTime.class) {
+                value = timestamp.toLocalDateTime();
+            }
+            field.set(instance, value);
+        }
+        return instance;
+    }
+}
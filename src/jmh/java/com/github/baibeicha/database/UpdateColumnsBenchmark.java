@@ -0,0 +1,90 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Basic;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.FetchType;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.lazy.LazyValue;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.EntitySqlTemplates;
+import com.github.baibeicha.database.metadata.FieldMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выбор колонок UPDATE для сущности с ленивой колонкой, которая не изменена.
+ * Запускать с профилировщиком gc (включён в build.gradle), метрика {@code gc.alloc.rate.norm}:
+ * {@code cloneMask} - прежний вариант с копией маски ленивых колонок и новым набором на каждую
+ * сущность, {@code sharedMask} - {@link EntitySqlTemplates#getUpdateColumns(Object)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpdateColumnsBenchmark {
+
+    @Entity
+    @Table(name = "article")
+    public static class Article {
+        @Id
+        Long id = 1L;
+        String title = "title";
+        String author = "author";
+        int views;
+        @Basic(fetch = FetchType.LAZY)
+        LazyValue<String> body = LazyValue.lazy(() -> "body");
+    }
+
+    private EntitySqlTemplates templates;
+    private List<FieldMapping> fields;
+    private BitSet lazy;
+    private Article article;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EntityMetadata<Article> metadata = EntityMetadata.of(Article.class);
+        templates = EntitySqlTemplates.of(metadata, (type, length) -> "TEXT");
+        fields = metadata.getColumnFields();
+        lazy = new BitSet();
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).isLazyValue()) {
+                lazy.set(i);
+            }
+        }
+        article = new Article();
+    }
+
+    @Benchmark
+    public BitSet cloneMask() {
+        BitSet lazyColumns = (BitSet) lazy.clone();
+        BitSet columns = new BitSet(fields.size());
+        columns.set(0, fields.size());
+        for (int i = lazyColumns.nextSetBit(0); i >= 0; i = lazyColumns.nextSetBit(i + 1)) {
+            if (!(fields.get(i).get(article) instanceof LazyValue<?> value && value.isModified())) {
+                columns.clear(i);
+            }
+        }
+        return columns;
+    }
+
+    @Benchmark
+    public BitSet sharedMask() {
+        return templates.getUpdateColumns(article);
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.baibeicha.database.connection;
+
+import com.github.baibeicha.database.TestDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выдача и возврат подключения на 1, 8, 64 и 512 потоках для обоих {@link AcquireMode}.
+ * Пул из {@code maxPoolSize} подключений тестового драйвера, так что измеряется только
+ * синхронизация пула, а при числе потоков больше размера пула - и ожидание.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+
+    @Param({"LOCK_FREE", "LOCKED"})
+    public AcquireMode mode;
+
+    @Param({"16"})
+    public int maxPoolSize;
+
+    private ConnectionPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        TestDriver.install();
+        ConnectionPoolConfig config = ConnectionPoolConfig.builder()
+                .acquireMode(mode)
+                .minIdle(maxPoolSize)
+                .maxPoolSize(maxPoolSize)
+                .acquireTimeout(Duration.ofMinutes(1))
+                .validationMode(ValidationMode.NONE)
+                .build();
+        pool = ConnectionPool.create("jdbc:postgresql://localhost:1/test", "test", "test", config);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        pool.shutdown();
+    }
+
+    private Connection borrowAndReturn() throws InterruptedException, SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        return connection;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Connection threads1() throws InterruptedException, SQLException {
+        return borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Connection threads8() throws InterruptedException, SQLException {
+        return borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Connection threads64() throws InterruptedException, SQLException {
+        return borrowAndReturn();
+    }
+
+    @Benchmark
+    @Threads(512)
+    public Connection threads512() throws InterruptedException, SQLException {
+        return borrowAndReturn();
+    }
+}
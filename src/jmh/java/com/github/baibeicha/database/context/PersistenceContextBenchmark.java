@@ -0,0 +1,107 @@
+package com.github.baibeicha.database.context;
+
+import com.github.baibeicha.database.Database;
+import com.github.baibeicha.database.Session;
+import com.github.baibeicha.database.TestDriver;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.baibeicha.database.TestDriver.row;
+
+/**
+ * {@link Session#findById} по управляемым сущностям: поиск идёт только по контексту сессии.
+ * Запускать с профилировщиком gc (включён в build.gradle), метрика {@code gc.alloc.rate.norm}
+ * должна быть около нуля и для Long, и для Integer id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceContextBenchmark {
+
+    @Entity
+    @Table(name = "customer")
+    public static class Customer {
+        @Id
+        Long id;
+    }
+
+    @Entity
+    @Table(name = "region")
+    public static class Region {
+        @Id
+        Integer id;
+    }
+
+    @Param("100000")
+    public int entities;
+
+    private Database db;
+    private Session session;
+    private Long[] longIds;
+    private Integer[] integerIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<Map<String, Object>> customers = new ArrayList<>(entities);
+        List<Map<String, Object>> regions = new ArrayList<>(entities);
+        longIds = new Long[entities];
+        integerIds = new Integer[entities];
+        for (int i = 0; i < entities; i++) {
+            longIds[i] = (long) i;
+            integerIds[i] = i;
+            customers.add(row("id", longIds[i]));
+            regions.add(row("id", integerIds[i]));
+        }
+        TestDriver.install().onQuery((sql, params) -> sql.contains("customer") ? customers : regions);
+        db = new Database(TestDriver.dataSource(), 1);
+        session = db.getSession();
+        session.queryForList("SELECT id FROM customer", Customer.class);
+        session.queryForList("SELECT id FROM region", Region.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        session.close();
+        db.close();
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == entities ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public Optional<Customer> findLongId() {
+        return session.findById(Customer.class, longIds[nextIndex()]);
+    }
+
+    @Benchmark
+    public Optional<Region> findIntegerId() {
+        return session.findById(Region.class, integerIds[nextIndex()]);
+    }
+}
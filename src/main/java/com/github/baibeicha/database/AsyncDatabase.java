@@ -0,0 +1,138 @@
+package com.github.baibeicha.database;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Асинхронные операции {@link Database}, выполняемые на виртуальных потоках.
+ * <p>
+ * Одновременно выполняется не больше операций, чем подключений в пуле, остальные ждут
+ * на семафоре. Ожидающий виртуальный поток не занимает поток платформы, поэтому
+ * тысячи операций в очереди обходятся дёшево. Подключение или сессия закрываются по
+ * завершении операции. Отмена future прерывает выполняющий поток, а ещё не начатая
+ * операция не выполняется.
+ * <p>
+ * Прерывание во время сетевого чтения может закрыть сокет драйвера. Такое подключение
+ * пул не вернёт в работу, а закроет. Сессия возвращает подключение в пул, даже если
+ * откат незавершённой транзакции не удался.
+ */
+public final class AsyncDatabase {
+
+    /**
+     * Работа с сессией, выполняемая асинхронно.
+     */
+    @FunctionalInterface
+    public interface SessionWork<R> {
+        R execute(Session session) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface DatabaseCall<R> {
+        R call() throws Exception;
+    }
+
+    private final Database database;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    AsyncDatabase(Database database) {
+        this.database = database;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("database-async-", 0).factory());
+        this.permits = new Semaphore(database.getPoolStatistics().maxPoolSize(), true);
+    }
+
+    /**
+     * См. {@link Database#queryForObject(String, Class, Object...)}.
+     */
+    public <T> CompletableFuture<Optional<T>> queryForObject(String sql, Class<T> targetClass, Object... params) {
+        return submit(() -> database.queryForObject(sql, targetClass, params));
+    }
+
+    /**
+     * См. {@link Database#queryForList(String, Class, Object...)}.
+     */
+    public <T> CompletableFuture<List<T>> queryForList(String sql, Class<T> targetClass, Object... params) {
+        return submit(() -> database.queryForList(sql, targetClass, params));
+    }
+
+    /**
+     * См. {@link Database#update(String, Object...)}.
+     */
+    public CompletableFuture<Integer> update(String sql, Object... params) {
+        return submit(() -> database.update(sql, params));
+    }
+
+    /**
+     * Выполнить работу с новой сессией, сессия закрывается после выполнения.
+     * Незавершённая транзакция при этом откатывается.
+     * @param work работа с сессией.
+     * @return результат работы.
+     */
+    public <R> CompletableFuture<R> inSession(SessionWork<R> work) {
+        return submit(() -> {
+            try (Session session = database.getSession()) {
+                return work.execute(session);
+            }
+        });
+    }
+
+    /**
+     * Выполнить работу в транзакции новой сессии: commit после успешного выполнения,
+     * rollback при исключении.
+     * @param work работа с сессией.
+     * @return результат работы.
+     */
+    public <R> CompletableFuture<R> inTransaction(SessionWork<R> work) {
+        return inSession(session -> {
+            session.beginTransaction();
+            R result = work.execute(session);
+            session.commit();
+            return result;
+        });
+    }
+
+    private <R> CompletableFuture<R> submit(DatabaseCall<R> call) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> run(call, result));
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private <R> void run(DatabaseCall<R> call, CompletableFuture<R> result) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            result.completeExceptionally(new CancellationException("Interrupted while waiting for a connection"));
+            return;
+        }
+        try {
+            if (!result.isDone()) {
+                result.complete(call.call());
+            }
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Прекратить приём операций, уже принятые выполняются до конца.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
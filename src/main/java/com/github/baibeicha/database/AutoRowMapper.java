@@ -1,92 +1,311 @@
 package com.github.baibeicha.database;
 
-import com.github.baibeicha.database.annotation.*;
+import com.github.baibeicha.database.annotation.FetchType;
+import com.github.baibeicha.database.annotation.ManyToMany;
+import com.github.baibeicha.database.annotation.OneToMany;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.lazy.LazyList;
+import com.github.baibeicha.database.lazy.LazyLoader;
+import com.github.baibeicha.database.lazy.LazyReference;
+import com.github.baibeicha.database.lazy.LazySet;
+import com.github.baibeicha.database.lazy.LazyValue;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.FieldMapping;
 import com.github.baibeicha.reflection.util.AnnotationUtils;
 
-import java.lang.reflect.Field;
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class AutoRowMapper<T> implements RowMapper<T> {
 
-    private final Class<T> entityClass;
+    private final EntityMetadata<T> metadata;
     private final Database database;
+    private final String[] lazyReferenceQueries;
+    private final String[] lazyValueQueries;
+    private final List<CollectionPlan> collectionPlans;
+
+    private record CollectionPlan(FieldMapping field, String sql, boolean set) {
+    }
 
     public AutoRowMapper(Class<T> entityClass, Database database) {
-        this.entityClass = entityClass;
+        this.metadata = database.getMetadata(entityClass);
         this.database = database;
+
+        List<FieldMapping> fields = metadata.getColumnFields();
+        this.lazyReferenceQueries = new String[fields.size()];
+        String[] lazyValues = null;
+        for (int i = 0; i < fields.size(); i++) {
+            FieldMapping field = fields.get(i);
+            if (field.isLazyReference()) {
+                lazyReferenceQueries[i] = database.getSqlTemplates(field.getTargetType()).getSelectByIdSql();
+            } else if (field.isLazyValue()) {
+                if (lazyValues == null) {
+                    lazyValues = new String[fields.size()];
+                }
+                lazyValues[i] = "SELECT " + field.getColumnName() + " FROM " + metadata.getTableName()
+                        + " WHERE " + metadata.getIdField().getColumnName() + " = ?";
+            }
+        }
+        this.lazyValueQueries = lazyValues;
+
+        this.collectionPlans = new ArrayList<>();
+        for (FieldMapping field : metadata.getCollectionFields()) {
+            String sql = collectionQuery(field);
+            if (sql == null) {
+                continue;
+            }
+            if (field.getType().isAssignableFrom(LazyList.class)) {
+                collectionPlans.add(new CollectionPlan(field, sql, false));
+            } else if (field.getType().isAssignableFrom(LazySet.class)) {
+                collectionPlans.add(new CollectionPlan(field, sql, true));
+            }
+        }
     }
 
+    private String collectionQuery(FieldMapping field) {
+        Class<?> targetClass = field.getTargetType();
+        String targetTable = database.getTableName(targetClass);
+
+        if (field.getKind() == FieldMapping.Kind.ONE_TO_MANY) {
+            String mappedBy = AnnotationUtils.findAnnotation(field.getField(), OneToMany.class).mappedBy();
+            if (mappedBy.isEmpty()) {
+                return null;
+            }
+            FieldMapping owner = database.getMetadata(targetClass).getField(mappedBy);
+            if (owner == null || !owner.isToOne()) {
+                throw new DatabaseException("mappedBy \"" + mappedBy + "\" of " + field
+                        + " must name a @ManyToOne/@OneToOne field of " + targetClass.getName());
+            }
+            return "SELECT " + database.getMetadata(targetClass).getSelectColumns() + " FROM " + targetTable + " WHERE " + owner.getColumnName() + " = ?";
+        }
+
+        ManyToMany m2m = AnnotationUtils.findAnnotation(field.getField(), ManyToMany.class);
+        return "SELECT " + database.getMetadata(targetClass).getSelectColumns("t") + " FROM " + targetTable + " t JOIN " + m2m.joinTable() + " j"
+                + " ON t." + database.getIdColumnName(targetClass) + " = j." + m2m.inverseJoinColumn()
+                + " WHERE j." + m2m.joinColumn() + " = ?";
+    }
+
+    /**
+     * Чтение одной строки: индексы колонок вычисляются по метаданным результата,
+     * EAGER связи загружаются через подключение из пула.
+     * Запросы {@link Database} привязывают маппер один раз на результат и загружают
+     * связи всех строк пачками, см. {@link #bind(ResultSetMetaData, RelationLoader)}.
+     */
     @Override
     public T mapRow(ResultSet rs) throws SQLException {
-        try {
-            T instance = entityClass.getDeclaredConstructor().newInstance();
+        RelationLoader relations = new RelationLoader(database, null);
+        T instance = bind(rs.getMetaData(), relations).mapRow(rs);
+        if (relations.hasPending()) {
+            try (Connection conn = database.getConnection()) {
+                relations.load(conn);
+            }
+        }
+        return instance;
+    }
 
-            for (Field field : entityClass.getDeclaredFields()) {
-                if (AnnotationUtils.isAnnotated(field, Transient.class) ||
-                        AnnotationUtils.isAnnotated(field, OneToMany.class) ||
-                        AnnotationUtils.isAnnotated(field, ManyToMany.class)) {
-                    continue;
-                }
+    /**
+     * Привязка, при которой EAGER связи не загружаются сразу, а собираются в
+     * {@code relations} для пакетной загрузки после чтения всех строк.
+     */
+    RowMapper<T> bind(ResultSetMetaData rsMetaData, RelationLoader relations) throws SQLException {
+        int[] indexes = resolveIndexes(rsMetaData);
+        return rs -> mapRow(rs, indexes, relations);
+    }
 
-                field.setAccessible(true);
+    private int[] resolveIndexes(ResultSetMetaData rsMetaData) throws SQLException {
+        Map<String, Integer> labels = new HashMap<>();
+        for (int i = rsMetaData.getColumnCount(); i >= 1; i--) {
+            labels.put(rsMetaData.getColumnLabel(i).toLowerCase(), i);
+        }
 
-                if (AnnotationUtils.isAnnotated(field, ManyToOne.class) ||
-                        AnnotationUtils.isAnnotated(field, OneToOne.class)) {
+        List<FieldMapping> fields = metadata.getColumnFields();
+        int[] indexes = new int[fields.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            FieldMapping field = fields.get(i);
+            boolean skipped = field.isToOne() && field.getFetchType() == FetchType.LAZY
+                    && !field.isLazyReference();
+            indexes[i] = skipped ? 0 : labels.getOrDefault(field.getColumnName().toLowerCase(), 0);
+        }
+        return indexes;
+    }
 
-                    String joinColumnName;
-                    FetchType fetchType;
+    private T mapRow(ResultSet rs, int[] indexes, RelationLoader relations) throws SQLException {
+        return mapRow(rs, indexes, null, relations);
+    }
 
-                    if (AnnotationUtils.isAnnotated(field, ManyToOne.class)) {
-                        ManyToOne m2o = AnnotationUtils.findAnnotation(field, ManyToOne.class);
-                        joinColumnName = m2o.joinColumn();
-                        fetchType = m2o.fetch();
-                    } else {
-                        OneToOne o2o = AnnotationUtils.findAnnotation(field, OneToOne.class);
-                        joinColumnName = o2o.joinColumn();
-                        fetchType = o2o.fetch();
-                    }
+    /**
+     * Чтение строки по индексам колонок. Связи, уже прочитанные из этой же строки
+     * через JOIN, передаются в {@code joined} по индексу поля, их колонки не читаются.
+     */
+    T mapRow(ResultSet rs, int[] indexes, Object[] joined, RelationLoader relations) throws SQLException {
+        try {
+            T instance = metadata.newInstance();
+            List<FieldMapping> fields = metadata.getColumnFields();
 
-                    if (fetchType == FetchType.LAZY) {
+            for (int i = 0; i < indexes.length; i++) {
+                FieldMapping field = fields.get(i);
+                if (joined != null && joined[i] != null) {
+                    field.set(instance, field.isLazyReference() ? LazyReference.of(joined[i]) : joined[i]);
+                    continue;
+                }
+                int index = indexes[i];
+                if (index == 0) {
+                    continue;
+                }
+
+                if (field.isToOne()) {
+                    Object foreignKeyValue = rs.getObject(index);
+                    if (foreignKeyValue == null) {
                         continue;
                     }
+                    if (field.getFetchType() == FetchType.LAZY) {
+                        field.set(instance, lazyReference(field.getTargetType(), lazyReferenceQueries[i],
+                                foreignKeyValue, relations.getSession()));
+                    } else {
+                        relations.defer(instance, field, foreignKeyValue);
+                    }
+                } else if (field.isLazyValue()) {
+                    // колонка есть в результате, например в SELECT *, - значение уже загружено
+                    Object value = rs.getObject(index);
+                    field.set(instance, LazyValue.loaded(value == null ? null :
+                            convertSqlValueToJavaType(value, field.getTargetType())));
+                } else {
+                    readColumn(rs, index, field, instance);
+                }
+            }
 
-                    Object foreignKeyValue = rs.getObject(joinColumnName);
+            assignLazyFields(instance, relations.getSession());
+            return instance;
 
-                    if (foreignKeyValue != null) {
-                        Class<?> targetClass = field.getType();
+        } catch (Exception e) {
+            throw new SQLException("Failed to auto-map row to entity: " + metadata.getEntityClass().getName(), e);
+        }
+    }
 
-                        String targetTable = database.getTableName(targetClass);
-                        String targetIdCol = database.getIdColumnName(targetClass);
-                        String sql = "SELECT * FROM " + targetTable + " WHERE " + targetIdCol + " = ?";
+    /**
+     * Значения колонок сущности в порядке {@link EntityMetadata#getColumnFields()},
+     * для связей ManyToOne/OneToOne - внешний ключ. Ленивые простые поля не сохраняются.
+     */
+    Object[] dehydrate(T entity) throws DatabaseException {
+        List<FieldMapping> fields = metadata.getColumnFields();
+        Object[] state = new Object[fields.size()];
+        for (int i = 0; i < state.length; i++) {
+            FieldMapping field = fields.get(i);
+            if (field.isLazyValue()) {
+                continue;
+            }
+            Object value = field.get(entity);
+            state[i] = field.isToOne() ? database.getIdValue(value) : value;
+        }
+        return state;
+    }
 
-                        Optional<?> relatedObjectOpt = database.queryForObject(sql, targetClass, foreignKeyValue);
+    /**
+     * Собрать новый экземпляр из значений {@link #dehydrate}. Связи заполняются
+     * так же, как при чтении строки результата.
+     */
+    T hydrate(Object[] state, RelationLoader relations) throws DatabaseException {
+        T instance = metadata.newInstance();
+        List<FieldMapping> fields = metadata.getColumnFields();
+        for (int i = 0; i < state.length; i++) {
+            Object value = state[i];
+            if (value == null) {
+                continue;
+            }
+            FieldMapping field = fields.get(i);
+            if (!field.isToOne()) {
+                field.set(instance, value);
+            } else if (field.getFetchType() == FetchType.EAGER) {
+                relations.defer(instance, field, value);
+            } else if (field.isLazyReference()) {
+                field.set(instance, lazyReference(field.getTargetType(), lazyReferenceQueries[i],
+                        value, relations.getSession()));
+            }
+        }
+        assignLazyFields(instance, relations.getSession());
+        return instance;
+    }
 
-                        if (relatedObjectOpt.isPresent()) {
-                            field.set(instance, relatedObjectOpt.get());
-                        }
-                    }
-                    continue;
+    /**
+     * Ленивые коллекции и ленивые простые поля, не прочитанные из результата, загружаются по id сущности.
+     */
+    private void assignLazyFields(T instance, Session session) {
+        if (collectionPlans.isEmpty() && lazyValueQueries == null) {
+            return;
+        }
+        Object id = metadata.getIdField().get(instance);
+        if (id == null) {
+            return;
+        }
+        for (CollectionPlan plan : collectionPlans) {
+            plan.field().set(instance, lazyCollection(plan.field().getTargetType(), plan, id, session));
+        }
+        if (lazyValueQueries != null) {
+            List<FieldMapping> fields = metadata.getColumnFields();
+            for (int i = 0; i < lazyValueQueries.length; i++) {
+                FieldMapping field = fields.get(i);
+                if (lazyValueQueries[i] != null && field.get(instance) == null) {
+                    field.set(instance, lazyValue(field.getTargetType(), lazyValueQueries[i], id, session));
                 }
+            }
+        }
+    }
+
+    private <E> LazyValue<E> lazyValue(Class<E> type, String sql, Object id, Session session) {
+        if (session != null) {
+            return LazyValue.lazy(() -> database.queryForObject(session.getConnection(), sql, type, id).orElse(null));
+        }
+        return LazyValue.lazy(() -> database.queryForObject(sql, type, id).orElse(null));
+    }
 
-                String columnName = getColumnName(field);
+    private <E> LazyReference<E> lazyReference(Class<E> targetClass, String sql, Object id, Session session) {
+        if (session != null) {
+            return LazyReference.lazy(id, () -> session.findById(targetClass, id).orElse(null));
+        }
+        return LazyReference.lazy(id, () -> database.queryForObject(sql, targetClass, id).orElse(null));
+    }
 
-                if (columnName != null) {
-                    Object value = rs.getObject(columnName);
+    private <E> Collection<E> lazyCollection(Class<E> targetClass, CollectionPlan plan, Object id, Session session) {
+        String sql = plan.sql();
+        LazyLoader<List<E>> loader = session != null ?
+                () -> session.queryForList(sql, targetClass, id) :
+                () -> database.queryForList(sql, targetClass, id);
+        return plan.set() ? new LazySet<>(loader) : new LazyList<>(loader);
+    }
 
-                    if (value != null) {
-                        value = convertSqlValueToJavaType(value, field.getType());
-                        field.set(instance, value);
-                    }
+    private void readColumn(ResultSet rs, int index, FieldMapping field, Object instance) throws SQLException {
+        switch (field.getValueType()) {
+            case INT -> {
+                int value = rs.getInt(index);
+                if (!rs.wasNull()) field.setInt(instance, value);
+            }
+            case LONG -> {
+                long value = rs.getLong(index);
+                if (!rs.wasNull()) field.setLong(instance, value);
+            }
+            case DOUBLE -> {
+                double value = rs.getDouble(index);
+                if (!rs.wasNull()) field.setDouble(instance, value);
+            }
+            case BOOLEAN -> {
+                boolean value = rs.getBoolean(index);
+                if (!rs.wasNull()) field.setBoolean(instance, value);
+            }
+            case OBJECT -> {
+                Object value = rs.getObject(index);
+                if (value != null) {
+                    field.set(instance, convertSqlValueToJavaType(value, field.getType()));
                 }
             }
-            return instance;
-
-        } catch (Exception e) {
-            throw new SQLException("Failed to auto-map row to entity: " + entityClass.getName(), e);
         }
     }
 
@@ -102,11 +321,4 @@ public class AutoRowMapper<T> implements RowMapper<T> {
         }
         return sqlValue;
     }
-
-    private String getColumnName(Field field) {
-        if (AnnotationUtils.isAnnotated(field, Column.class)) {
-            return AnnotationUtils.findAnnotation(field, Column.class).name();
-        }
-        return field.getName().toLowerCase();
-    }
 }
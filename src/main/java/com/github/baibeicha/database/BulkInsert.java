@@ -0,0 +1,214 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.dialect.SqlDialect;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.metadata.FieldMapping;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Массовая вставка сущностей без возврата сгенерированных id.
+ * <p>
+ * Если диалект поддерживает COPY, строки передаются потоком в текстовом формате COPY
+ * и формируются по мере чтения драйвером, иначе вставляются многострочными
+ * {@code INSERT ... VALUES (...), (...)}. Колонки те же, что у {@link Database#executeInsert},
+ * незагруженные {@link com.github.baibeicha.database.lazy.LazyValue} пишутся как NULL.
+ */
+final class BulkInsert {
+
+    /**
+     * Ограничение количества параметров в одном запросе (MySQL и PostgreSQL).
+     */
+    private static final int MAX_PARAMETERS = 65535;
+
+    /**
+     * Сколько символов COPY данных формируется за раз.
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final Database database;
+    private final Class<?> entityClass;
+    private final String tableName;
+    private final FieldMapping[] fields;
+    private final FieldMapping versionField;
+
+    BulkInsert(Database database, Class<?> entityClass) throws DatabaseException {
+        this.database = database;
+        this.entityClass = entityClass;
+        this.tableName = database.getMetadata(entityClass).getTableName();
+        this.fields = database.getSqlTemplates(entityClass).getInsertFields();
+        this.versionField = database.getMetadata(entityClass).getVersionField();
+    }
+
+    long execute(Connection conn, Iterable<?> entities) throws SQLException, DatabaseException {
+        SqlDialect dialect = database.getDialect();
+        if (dialect.supportsCopy()) {
+            String sql = "COPY " + tableName + " (" + columnList() + ") FROM STDIN";
+            return dialect.copyIn(conn, sql, new CopyReader(entities.iterator()));
+        }
+        return insertMultiRow(conn, entities);
+    }
+
+    private String columnList() {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            columns.append(i == 0 ? "" : ", ").append(fields[i].getColumnName());
+        }
+        return columns.toString();
+    }
+
+    private long insertMultiRow(Connection conn, Iterable<?> entities) throws SQLException, DatabaseException {
+        int rowsPerStatement = Math.min(Database.JDBC_BATCH_SIZE, MAX_PARAMETERS / Math.max(1, fields.length));
+        String fullSql = multiRowSql(rowsPerStatement);
+
+        long inserted = 0;
+        List<Object> chunk = new ArrayList<>(rowsPerStatement);
+        for (Object entity : entities) {
+            chunk.add(checkType(entity));
+            if (chunk.size() == rowsPerStatement) {
+                inserted += executeChunk(conn, fullSql, chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            inserted += executeChunk(conn, multiRowSql(chunk.size()), chunk);
+        }
+        return inserted;
+    }
+
+    private String multiRowSql(int rows) {
+        StringBuilder row = new StringBuilder("(");
+        for (int i = 0; i < fields.length; i++) {
+            row.append(i == 0 ? "?" : ", ?");
+        }
+        row.append(")");
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName)
+                .append(" (").append(columnList()).append(") VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(row);
+        }
+        return sql.toString();
+    }
+
+    private int executeChunk(Connection conn, String sql, List<Object> chunk) throws SQLException, DatabaseException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (Object entity : chunk) {
+                for (FieldMapping field : fields) {
+                    stmt.setObject(index++, database.columnValue(field, entity));
+                }
+            }
+            return stmt.executeUpdate();
+        }
+    }
+
+    private Object checkType(Object entity) throws DatabaseException {
+        if (entity == null || entity.getClass() != entityClass) {
+            throw new DatabaseException("Bulk insert of " + entityClass.getName() + " got "
+                    + (entity == null ? "null" : entity.getClass().getName()));
+        }
+        Database.initVersion(versionField, entity);
+        return entity;
+    }
+
+    /**
+     * Значение колонки в текстовом формате COPY. Даты и время пишутся в ISO-8601:
+     * {@code toString()} у {@link java.util.Date} зависит от локали и не читается PostgreSQL,
+     * а {@link java.util.Date}, как и в JDBC, переводится в локальное время часового пояса JVM.
+     */
+    static void appendCopyValue(StringBuilder buffer, Object value) {
+        if (value == null) {
+            buffer.append("\\N");
+            return;
+        }
+        if (value instanceof Boolean bool) {
+            buffer.append(bool ? 't' : 'f');
+            return;
+        }
+        if (value instanceof byte[] bytes) {
+            buffer.append("\\\\x");
+            for (byte b : bytes) {
+                buffer.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return;
+        }
+        String text = switch (value) {
+            case Enum<?> constant -> constant.name();
+            case BigDecimal decimal -> decimal.toPlainString();
+            case Timestamp timestamp -> timestamp.toLocalDateTime().toString();
+            case java.sql.Date date -> date.toLocalDate().toString();
+            case Time time -> time.toLocalTime().toString();
+            case java.util.Date date -> new Timestamp(date.getTime()).toLocalDateTime().toString();
+            default -> value.toString();
+        };
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+    }
+
+    /**
+     * Данные COPY в текстовом формате, формируемые из сущностей по мере чтения.
+     */
+    private final class CopyReader extends Reader {
+
+        private final Iterator<?> entities;
+        private final StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+        private int position;
+
+        private CopyReader(Iterator<?> entities) {
+            this.entities = entities;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == buffer.length() && !fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.length() - position);
+            buffer.getChars(position, position + count, cbuf, off);
+            position += count;
+            return count;
+        }
+
+        private boolean fill() {
+            buffer.setLength(0);
+            position = 0;
+            while (buffer.length() < COPY_BUFFER_SIZE && entities.hasNext()) {
+                Object entity = checkType(entities.next());
+                for (int i = 0; i < fields.length; i++) {
+                    if (i > 0) {
+                        buffer.append('\t');
+                    }
+                    appendCopyValue(buffer, database.columnValue(fields[i], entity));
+                }
+                buffer.append('\n');
+            }
+            return buffer.length() > 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package com.github.baibeicha.database;
 
+import com.github.baibeicha.database.connection.ConnectionPoolConfig;
+
+/**
+ * Параметры подключения к бд.
+ * <p>
+ * {@code poolConfig} может быть null, тогда используются настройки пула по умолчанию.
+ */
 public record DataSource(
         DatabaseType databaseType,
         String host,
         int port,
         String database,
         String username,
-        String password
+        String password,
+        ConnectionPoolConfig poolConfig
 ) {
 
+    public DataSource(DatabaseType databaseType, String host, int port,
+                      String database, String username, String password) {
+        this(databaseType, host, port, database, username, password, null);
+    }
+
     public String url() {
         return DbUrls.getUrl(databaseType, host, port, database);
     }
@@ -25,6 +38,7 @@ public record DataSource(
         private String database;
         private String username;
         private String password;
+        private ConnectionPoolConfig poolConfig;
 
         public Builder type(DatabaseType databaseType) {
             this.databaseType = databaseType;
@@ -56,8 +70,13 @@ public record DataSource(
             return this;
         }
 
+        public Builder pool(ConnectionPoolConfig poolConfig) {
+            this.poolConfig = poolConfig;
+            return this;
+        }
+
         public DataSource build() {
-            return new DataSource(databaseType, host, port, database, username, password);
+            return new DataSource(databaseType, host, port, database, username, password, poolConfig);
         }
     }
 }
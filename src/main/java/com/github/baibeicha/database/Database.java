@@ -8,27 +8,47 @@ import com.github.baibeicha.database.annotation.ManyToMany;
 import com.github.baibeicha.database.annotation.ManyToOne;
 import com.github.baibeicha.database.annotation.OneToMany;
 import com.github.baibeicha.database.annotation.OneToOne;
-import com.github.baibeicha.database.annotation.Table;
 import com.github.baibeicha.database.annotation.Transient;
+import com.github.baibeicha.database.cache.QueryCache;
+import com.github.baibeicha.database.cache.SecondLevelCache;
 import com.github.baibeicha.database.connection.ConnectionManager;
+import com.github.baibeicha.database.connection.ConnectionPoolConfig;
+import com.github.baibeicha.database.connection.ConnectionPoolStatistics;
+import com.github.baibeicha.database.connection.StatementCacheStatistics;
 import com.github.baibeicha.database.dialect.MySqlDialect;
 import com.github.baibeicha.database.dialect.PostgresDialect;
 import com.github.baibeicha.database.dialect.SqlDialect;
 import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.exception.OptimisticLockException;
+import com.github.baibeicha.database.lazy.LazyReference;
+import com.github.baibeicha.database.lazy.LazyValue;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.EntitySqlTemplates;
+import com.github.baibeicha.database.metadata.FieldMapping;
+import com.github.baibeicha.database.page.Page;
+import com.github.baibeicha.database.page.PageRequest;
+import com.github.baibeicha.database.page.Slice;
+import com.github.baibeicha.database.query.Query;
 import com.github.baibeicha.reflection.util.AnnotationUtils;
 
 import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Простой ORM фреймворк с поддержкой чистого SQL.
@@ -40,15 +60,34 @@ public class Database implements AutoCloseable {
      */
     public static final int STANDARD_CONNECTION_POOL_SIZE = 10;
 
+    /**
+     * Максимальное количество строк в одном executeBatch.
+     */
+    public static final int JDBC_BATCH_SIZE = 1000;
+
+    /**
+     * Количество строк, запрашиваемых у бд за раз при потоковом чтении.
+     */
+    public static final int STREAM_FETCH_SIZE = RelationLoader.BATCH_SIZE;
+
     private final ConnectionManager connectionManager;
     private final SqlDialect dialect;
 
     private final Map<Class<?>, RowMapper<?>> entityMappers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, EntityMetadata<?>> metadataCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, EntitySqlTemplates> sqlTemplatesCache = new ConcurrentHashMap<>();
     private final Map<Class<?>, String> tableNameCache = new ConcurrentHashMap<>();
-    private final Map<Class<?>, Field> idFieldCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Optional<FetchJoinLoader<?>>> fetchJoinCache = new ConcurrentHashMap<>();
+    private volatile int fetchJoinDepth = 1;
+    private final SecondLevelCache secondLevelCache = new SecondLevelCache();
+    private volatile QueryCache queryCache;
+    private volatile AsyncDatabase async;
 
     public Database(DataSource dataSource) throws SQLException {
-        this.connectionManager = new ConnectionManager(dataSource, STANDARD_CONNECTION_POOL_SIZE);
+        this.connectionManager = new ConnectionManager(dataSource,
+                dataSource.poolConfig() != null ?
+                        dataSource.poolConfig() :
+                        ConnectionPoolConfig.ofSize(STANDARD_CONNECTION_POOL_SIZE));
         this.dialect = initDialect(dataSource.databaseType());
     }
 
@@ -57,6 +96,11 @@ public class Database implements AutoCloseable {
         this.dialect = initDialect(dataSource.databaseType());
     }
 
+    public Database(DataSource dataSource, ConnectionPoolConfig poolConfig) throws SQLException {
+        this.connectionManager = new ConnectionManager(dataSource, poolConfig);
+        this.dialect = initDialect(dataSource.databaseType());
+    }
+
     private SqlDialect initDialect(DatabaseType type) {
         return switch (type) {
             case POSTGRESQL -> new PostgresDialect();
@@ -65,6 +109,13 @@ public class Database implements AutoCloseable {
         };
     }
 
+    /**
+     * @return диалект SQL бд.
+     */
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
     /**
      * Получить сессию бд для работы с Persistence Context.
      * @return сессия бд.
@@ -73,6 +124,24 @@ public class Database implements AutoCloseable {
         return new Session(this, connectionManager.getConnection());
     }
 
+    /**
+     * Асинхронные операции на виртуальных потоках, одновременно не больше размера пула.
+     * @return асинхронный интерфейс бд, один на объект Database.
+     */
+    public AsyncDatabase async() {
+        AsyncDatabase result = async;
+        if (result == null) {
+            synchronized (this) {
+                result = async;
+                if (result == null) {
+                    result = new AsyncDatabase(this);
+                    async = result;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Получить подключение к бд.
      * @return объект подключения к бд.
@@ -82,6 +151,68 @@ public class Database implements AutoCloseable {
         return connectionManager.getConnection();
     }
 
+    /**
+     * @return текущее состояние пула подключений.
+     */
+    public ConnectionPoolStatistics getPoolStatistics() {
+        return connectionManager.getPoolStatistics();
+    }
+
+    /**
+     * @return счётчики кеша PreparedStatement пула подключений.
+     */
+    public StatementCacheStatistics getStatementCacheStatistics() {
+        return connectionManager.getStatementCacheStatistics();
+    }
+
+    /**
+     * @return кеш второго уровня сущностей с {@link com.github.baibeicha.database.annotation.Cacheable}.
+     */
+    public SecondLevelCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    /**
+     * Включить кеш результатов {@link #queryForList(String, Class, Object...)} для проекций
+     * и скаляров, см. {@link ProjectionMapper}. Запросы сущностей всегда выполняются в бд.
+     * Результаты из кеша - неизменяемые списки общих для всех вызывающих объектов.
+     * Кеш очищается по таблицам при {@link #update} и записи сущностей через Database и Session,
+     * изменения в обход них нужно сбрасывать через {@link QueryCache#invalidate(String)}.
+     * @param maxSize максимальное количество кешируемых запросов.
+     * @param ttl время жизни результата, {@link Duration#ZERO} - без ограничения.
+     * @return кеш запросов.
+     */
+    public QueryCache enableQueryCache(int maxSize, Duration ttl) {
+        QueryCache cache = new QueryCache(maxSize, ttl);
+        this.queryCache = cache;
+        return cache;
+    }
+
+    /**
+     * @return кеш запросов или null, если он не включён.
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Глубина LEFT JOIN для EAGER связей ManyToOne/OneToOne при загрузке сущности по id
+     * в {@link Session#findById}: 1 - присоединяются связи самой сущности, 2 - и связи связей и т.д.
+     * Более глубокие связи загружаются отдельными запросами.
+     * @param depth глубина, 0 - не присоединять.
+     */
+    public void setFetchJoinDepth(int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("depth < 0");
+        }
+        this.fetchJoinDepth = depth;
+        fetchJoinCache.clear();
+    }
+
+    public int getFetchJoinDepth() {
+        return fetchJoinDepth;
+    }
+
     /**
      * Регистрация маппера для сущности.
      * @param clazz тип сущности.
@@ -89,6 +220,17 @@ public class Database implements AutoCloseable {
      */
     public void registerMapper(Class<?> clazz, RowMapper<?> mapper) {
         entityMappers.put(clazz, mapper);
+        fetchJoinCache.clear();
+    }
+
+    /**
+     * @return загрузчик сущности по id с присоединёнными EAGER связями или null, если присоединять нечего.
+     */
+    @SuppressWarnings("unchecked")
+    <T> FetchJoinLoader<T> getFetchJoinLoader(Class<T> clazz) {
+        return (FetchJoinLoader<T>) fetchJoinCache
+                .computeIfAbsent(clazz, k -> Optional.ofNullable(FetchJoinLoader.of(this, k, fetchJoinDepth)))
+                .orElse(null);
     }
 
     /**
@@ -113,11 +255,26 @@ public class Database implements AutoCloseable {
      * @param sql SQL запрос.
      * @param targetClass тип сущности.
      * @param params параметры для вставки в запрос.
-     * @return список полученных сущностей.
+     * @return список полученных сущностей, для проекций при включённом кеше запросов - неизменяемый.
      * @throws DatabaseException ошибка бд.
      */
     public <T> List<T> queryForList(String sql, Class<T> targetClass, Object... params)
             throws DatabaseException {
+        QueryCache cache = queryCache;
+        // сущности не кешируются: их ленивые связи не потокобезопасны, а связанные таблицы не видны в тексте запроса
+        if (cache == null || !(getMapper(targetClass) instanceof ProjectionMapper)) {
+            return queryWithNewConnection(sql, targetClass, params);
+        }
+        List<T> cached = cache.get(sql, targetClass, params);
+        if (cached != null) {
+            return cached;
+        }
+        long version = cache.version();
+        return cache.put(sql, targetClass, params, queryWithNewConnection(sql, targetClass, params), version);
+    }
+
+    private <T> List<T> queryWithNewConnection(String sql, Class<T> targetClass, Object... params)
+            throws DatabaseException {
         try (Connection conn = getConnection()) {
             return queryForList(conn, sql, targetClass, params);
         } catch (SQLException e) {
@@ -125,6 +282,106 @@ public class Database implements AutoCloseable {
         }
     }
 
+    /**
+     * Типизированный запрос к сущности с условиями, связями, сортировкой и ограничением.
+     * @param entityClass тип сущности.
+     * @return новый запрос.
+     * @throws DatabaseException если класс не сущность.
+     */
+    public <T> Query<T> select(Class<T> entityClass) throws DatabaseException {
+        return new Query<>(this, entityClass);
+    }
+
+    /**
+     * SELECT запрос к бд с построчным чтением результата.
+     * Строки запрашиваются у бд по {@link #STREAM_FETCH_SIZE}, поэтому расход памяти
+     * не зависит от размера результата. Для MySQL строки передаются по одной
+     * ({@code fetchSize = Integer.MIN_VALUE}), и EAGER связи загружаются через второе
+     * подключение из пула. Поток держит подключение из пула до закрытия,
+     * его нужно закрывать через try-with-resources.
+     * @param sql SQL запрос.
+     * @param targetClass тип сущности.
+     * @param params параметры для вставки в запрос.
+     * @return поток сущностей.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> Stream<T> stream(String sql, Class<T> targetClass, Object... params) throws DatabaseException {
+        return ResultSetSpliterator.open(this, getConnection(), sql, targetClass, STREAM_FETCH_SIZE, params);
+    }
+
+    /**
+     * SELECT запрос к бд с передачей каждой сущности в {@code action} по мере чтения.
+     * @param sql SQL запрос.
+     * @param targetClass тип сущности.
+     * @param action обработчик сущности.
+     * @param params параметры для вставки в запрос.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> void forEach(String sql, Class<T> targetClass, Consumer<? super T> action, Object... params)
+            throws DatabaseException {
+        try (Stream<T> stream = stream(sql, targetClass, params)) {
+            stream.forEach(action);
+        }
+    }
+
+    /**
+     * Страница сущностей по ключу: следующая страница продолжается после последней
+     * строки предыдущей по индексу, без OFFSET.
+     * @param entityClass тип сущности.
+     * @param request запрос страницы.
+     * @return страница и запрос следующей.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> Slice<T> slice(Class<T> entityClass, PageRequest request) throws DatabaseException {
+        KeysetQuery query = new KeysetQuery(this, entityClass, request);
+        return query.toSlice(queryForList(query.getSql(), entityClass, query.getParameters()));
+    }
+
+    /**
+     * Страница сущностей по ключу с общим количеством строк.
+     * @param entityClass тип сущности.
+     * @param request запрос страницы.
+     * @return страница, запрос следующей и количество строк.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> Page<T> page(Class<T> entityClass, PageRequest request) throws DatabaseException {
+        KeysetQuery query = new KeysetQuery(this, entityClass, request);
+        try (Connection conn = getConnection()) {
+            Slice<T> slice = query.toSlice(queryForList(conn, query.getSql(), entityClass, query.getParameters()));
+            return new Page<>(slice, count(conn, entityClass));
+        } catch (SQLException e) {
+            throw new DatabaseException("Error executing page: " + query.getSql(), e);
+        }
+    }
+
+    /**
+     * Обход всех сущностей страницами по {@code firstRequest.size()}.
+     * Каждая страница запрашивается отдельно по мере обхода.
+     * @param entityClass тип сущности.
+     * @param firstRequest запрос первой страницы.
+     * @return итератор по сущностям.
+     */
+    public <T> Iterator<T> iterate(Class<T> entityClass, PageRequest firstRequest) {
+        return new SliceIterator<>(request -> slice(entityClass, request), firstRequest);
+    }
+
+    /**
+     * @param conn подключение к бд.
+     * @param entityClass тип сущности.
+     * @return количество строк таблицы сущности.
+     * @throws DatabaseException ошибка бд.
+     */
+    long count(Connection conn, Class<?> entityClass) throws DatabaseException {
+        String sql = "SELECT COUNT(*) FROM " + getTableName(entityClass);
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            throw new DatabaseException("Error executing count: " + sql, e);
+        }
+    }
+
     /**
      * UPDATE запрос к бд.
      * @param sql SQL запрос.
@@ -136,7 +393,12 @@ public class Database implements AutoCloseable {
         try (Connection conn = getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             setParameters(stmt, params);
-            return stmt.executeUpdate();
+            int updated = stmt.executeUpdate();
+            QueryCache cache = queryCache;
+            if (cache != null) {
+                cache.invalidateTablesOf(sql);
+            }
+            return updated;
         } catch (SQLException e) {
             throw new DatabaseException("Error executing update: " + sql, e);
         }
@@ -172,19 +434,61 @@ public class Database implements AutoCloseable {
      */
     public <T> List<T> queryForList(Connection conn, String sql, Class<T> targetClass, Object... params)
             throws DatabaseException {
+        return queryForList(conn, null, sql, targetClass, params);
+    }
+
+    /**
+     * @param conn подключение к бд.
+     * @param session сессия, к которой привязываются LAZY связи, или null.
+     * @param sql SQL запрос.
+     * @param targetClass тип сущности.
+     * @param params параметры для вставки в запрос.
+     * @return список полученных сущностей.
+     * @throws DatabaseException ошибка бд.
+     */
+    <T> List<T> queryForList(Connection conn, Session session, String sql, Class<T> targetClass, Object... params)
+            throws DatabaseException {
         List<T> results = new ArrayList<>();
+        RelationLoader relations = new RelationLoader(this, session);
         try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             setParameters(stmt, params);
             try (ResultSet rs = stmt.executeQuery()) {
-                RowMapper<T> mapper = getMapper(targetClass);
+                RowMapper<T> mapper = bindMapper(targetClass, rs.getMetaData(), relations);
                 while (rs.next()) {
                     results.add(mapper.mapRow(rs));
                 }
             }
-            return results;
         } catch (SQLException e) {
             throw new DatabaseException("Error in queryForList", e);
         }
+        relations.load(conn);
+        return results;
+    }
+
+    /**
+     * Загрузка сущностей по набору id одним запросом.
+     * @param conn подключение к бд.
+     * @param session сессия, к которой привязываются LAZY связи, или null.
+     * @param targetClass тип сущности.
+     * @param ids значения id.
+     * @return найденные сущности в порядке, возвращённом бд.
+     * @throws DatabaseException ошибка бд.
+     */
+    <T> List<T> queryByIds(Connection conn, Session session, Class<T> targetClass, List<?> ids)
+            throws DatabaseException {
+        Object[] values = ids.toArray();
+        // типы, которые диалект не передаёт одним параметром, - параметр на каждое значение
+        boolean dialectValues = dialect.supportsInParameters(values);
+        String idColumn = getIdColumnName(targetClass);
+        String sql = "SELECT " + getMetadata(targetClass).getSelectColumns() + " FROM " + getTableName(targetClass)
+                + " WHERE " + (dialectValues ? dialect.inCondition(idColumn, values.length)
+                : SqlDialect.expandedInCondition(idColumn, values.length));
+        try {
+            return queryForList(conn, session, sql, targetClass,
+                    dialectValues ? dialect.inParameters(conn, values) : values);
+        } catch (SQLException e) {
+            throw new DatabaseException("Error in queryByIds: " + sql, e);
+        }
     }
 
     /**
@@ -195,144 +499,478 @@ public class Database implements AutoCloseable {
      */
     public void executeInsert(Connection conn, Object entity) throws DatabaseException {
         try {
-            Class<?> clazz = entity.getClass();
-            String tableName = getTableName(clazz);
-            Field idField = getIdField(clazz);
+            EntityMetadata<?> metadata = getMetadata(entity.getClass());
+            EntitySqlTemplates sql = getSqlTemplates(metadata);
 
-            List<String> columns = new ArrayList<>();
-            List<Object> values = new ArrayList<>();
+            initVersion(metadata.getVersionField(), entity);
+            try (PreparedStatement stmt = conn.prepareStatement(sql.getInsertSql(), sql.getGeneratedKeyColumns())) {
+                bindFields(stmt, sql.getInsertFields(), entity);
+                stmt.executeUpdate();
+                readGeneratedIds(stmt, metadata.getIdField(), List.of(entity));
+            }
+            invalidateQueries(entity.getClass());
+        } catch (Exception e) {
+            throw new DatabaseException("Failed to execute INSERT", e);
+        }
+    }
 
-            for (Field field : clazz.getDeclaredFields()) {
-                if (AnnotationUtils.isAnnotated(field, Id.class) || isIgnoredField(field)) {
-                    continue;
-                }
+    /**
+     * Пакетное добавление сущностей одного типа: один PreparedStatement на всю пачку,
+     * сгенерированные id записываются обратно в поля @Id в порядке сущностей.
+     * @param conn подключение к бд.
+     * @param entities сущности одного типа.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void executeInsertBatch(Connection conn, List<?> entities) throws DatabaseException {
+        if (entities.isEmpty()) return;
+        try {
+            EntityMetadata<?> metadata = getBatchMetadata(entities);
+            EntitySqlTemplates sql = getSqlTemplates(metadata);
 
-                field.setAccessible(true);
-                Object val = field.get(entity);
-
-                if (AnnotationUtils.isAnnotated(field, ManyToOne.class)
-                        || AnnotationUtils.isAnnotated(field, OneToOne.class)) {
-                    String joinCol = AnnotationUtils.isAnnotated(field, ManyToOne.class) ?
-                            AnnotationUtils.findAnnotation(field, ManyToOne.class).joinColumn() :
-                            AnnotationUtils.findAnnotation(field, OneToOne.class).joinColumn();
-                    columns.add(joinCol);
-                    values.add(val != null ? getIdValue(val) : null);
-                } else {
-                    columns.add(getColumnName(field));
-                    values.add(val);
+            try (PreparedStatement stmt = conn.prepareStatement(sql.getInsertSql(), sql.getGeneratedKeyColumns())) {
+                for (int from = 0; from < entities.size(); from += JDBC_BATCH_SIZE) {
+                    List<?> chunk = entities.subList(from, Math.min(from + JDBC_BATCH_SIZE, entities.size()));
+                    for (Object entity : chunk) {
+                        initVersion(metadata.getVersionField(), entity);
+                        bindFields(stmt, sql.getInsertFields(), entity);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    readGeneratedIds(stmt, metadata.getIdField(), chunk);
                 }
             }
+            invalidateQueries(metadata.getEntityClass());
+        } catch (Exception e) {
+            throw new DatabaseException("Failed to execute batch INSERT", e);
+        }
+    }
 
-            StringBuilder sql = new StringBuilder("INSERT INTO ")
-                    .append(tableName)
-                    .append(" (")
-                    .append(String.join(", ", columns))
-                    .append(") VALUES (");
-            for (int i = 0; i < columns.size(); i++) {
-                sql.append(i == 0 ? "?" : ", ?");
+    /**
+     * Массовая вставка сущностей одного типа в отдельной транзакции. На PostgreSQL
+     * строки передаются потоком через COPY, на остальных бд многострочными INSERT.
+     * Сгенерированные id в сущности не записываются.
+     * @param entityClass тип сущностей.
+     * @param entities сущности, перебираются один раз.
+     * @return количество вставленных строк.
+     * @throws DatabaseException ошибка бд, транзакция откатывается.
+     */
+    public <T> long bulkInsert(Class<T> entityClass, Iterable<? extends T> entities) throws DatabaseException {
+        try (Connection conn = getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                long inserted = bulkInsert(conn, entityClass, entities);
+                conn.commit();
+                return inserted;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
-            sql.append(")");
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to execute bulk INSERT", e);
+        }
+    }
 
-            try (PreparedStatement stmt = conn.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
-                setParameters(stmt, values.toArray());
-                stmt.executeUpdate();
+    /**
+     * Массовая вставка сущностей одного типа на подключении, см. {@link #bulkInsert(Class, Iterable)}.
+     * @param conn подключение к бд.
+     * @param entityClass тип сущностей.
+     * @param entities сущности, перебираются один раз.
+     * @return количество вставленных строк.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> long bulkInsert(Connection conn, Class<T> entityClass, Iterable<? extends T> entities)
+            throws DatabaseException {
+        try {
+            long inserted = new BulkInsert(this, entityClass).execute(conn, entities);
+            invalidateQueries(entityClass);
+            return inserted;
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to execute bulk INSERT", e);
+        }
+    }
 
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        Object newId = rs.getObject(1);
-                        if (newId instanceof Number) {
-                            if (idField.getType() == long.class || idField.getType() == Long.class)
-                                newId = ((Number) newId).longValue();
-                            else if (idField.getType() == int.class || idField.getType() == Integer.class)
-                                newId = ((Number) newId).intValue();
-                        }
-                        idField.set(entity, newId);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            throw new DatabaseException("Failed to execute INSERT", e);
+    /**
+     * Вставка или обновление сущности одним запросом в отдельном подключении,
+     * см. {@link #upsertBatch(Connection, List)}.
+     * @param entity сущность.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void upsert(Object entity) throws DatabaseException {
+        upsertBatch(List.of(entity));
+    }
+
+    /**
+     * Вставка или обновление сущности одним запросом, см. {@link #upsertBatch(Connection, List)}.
+     * @param conn подключение к бд.
+     * @param entity сущность.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void upsert(Connection conn, Object entity) throws DatabaseException {
+        upsertBatch(conn, List.of(entity));
+    }
+
+    /**
+     * Пакетная вставка или обновление сущностей одного типа в отдельном подключении,
+     * см. {@link #upsertBatch(Connection, List)}.
+     * @param entities сущности одного типа.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void upsertBatch(List<?> entities) throws DatabaseException {
+        try (Connection conn = getConnection()) {
+            upsertBatch(conn, entities);
+        } catch (SQLException e) {
+            throw new DatabaseException("Failed to execute UPSERT", e);
         }
     }
 
     /**
-     * Обновление сущности в бд.
+     * Пакетная вставка или обновление сущностей одного типа
+     * ({@code ON CONFLICT DO UPDATE} в PostgreSQL, {@code ON DUPLICATE KEY UPDATE} в MySQL).
+     * Сущности с id сопоставляются с существующими строками по @Id. Сущности без id -
+     * по первой колонке с {@code @Column(unique = true)}, id вставленной или обновлённой
+     * строки записывается в сущность. Незагруженные {@code @Basic(fetch = LAZY)} колонки
+     * не пишутся и сохраняют значение в бд. Сущности с
+     * {@link com.github.baibeicha.database.annotation.Version} не поддерживаются.
      * @param conn подключение к бд.
-     * @param entity сущность для изменения.
+     * @param entities сущности одного типа.
      * @throws DatabaseException ошибка бд.
      */
-    public void executeUpdate(Connection conn, Object entity) throws DatabaseException {
+    public void upsertBatch(Connection conn, List<?> entities) throws DatabaseException {
+        if (entities.isEmpty()) return;
         try {
-            Class<?> clazz = entity.getClass();
-            String tableName = getTableName(clazz);
-            Field idField = getIdField(clazz);
-            Object idValue = idField.get(entity);
-            String idColName = getIdColumnName(clazz);
-
-            if (idValue == null) {
-                throw new DatabaseException("Cannot update entity with null ID");
+            EntityMetadata<?> metadata = getBatchMetadata(entities);
+            FieldMapping idField = metadata.getIdField();
+            List<Object> withId = new ArrayList<>();
+            List<Object> withoutId = new ArrayList<>();
+            for (Object entity : entities) {
+                (idField.get(entity) != null ? withId : withoutId).add(entity);
             }
 
-            List<String> setClauses = new ArrayList<>();
-            List<Object> values = new ArrayList<>();
+            EntitySqlTemplates sql = getSqlTemplates(metadata);
+            if (!withId.isEmpty()) {
+                upsertGroups(conn, sql, true, null, withId);
+            }
+            if (!withoutId.isEmpty()) {
+                upsertGroups(conn, sql, false, idField, withoutId);
+            }
+            evictFromCache(entities);
+        } catch (DatabaseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseException("Failed to execute UPSERT", e);
+        }
+    }
 
-            for (Field field : clazz.getDeclaredFields()) {
-                if (AnnotationUtils.isAnnotated(field, Id.class) || isIgnoredField(field)) {
-                    continue;
-                }
+    /**
+     * Upsert сущностей, сгруппированных по набору колонок: незагруженные ленивые
+     * значения не пишутся, чтобы не загружать их ради записи того же значения.
+     * @param generatedIdField поле @Id, если id генерируется бд и должен быть прочитан, иначе null.
+     */
+    private void upsertGroups(Connection conn, EntitySqlTemplates sql, boolean byId,
+                              FieldMapping generatedIdField, List<Object> entities)
+            throws SQLException, DatabaseException {
+        if (!sql.hasLazyColumns()) {
+            upsertGroup(conn, sql, sql.getUpsert(dialect, byId, null), generatedIdField, entities);
+            return;
+        }
+        Map<BitSet, List<Object>> groups = new LinkedHashMap<>();
+        for (Object entity : entities) {
+            groups.computeIfAbsent(sql.getUpsertColumns(entity), k -> new ArrayList<>()).add(entity);
+        }
+        for (Map.Entry<BitSet, List<Object>> group : groups.entrySet()) {
+            upsertGroup(conn, sql, sql.getUpsert(dialect, byId, group.getKey()), generatedIdField, group.getValue());
+        }
+    }
 
-                field.setAccessible(true);
-                Object val = field.get(entity);
-
-                if (AnnotationUtils.isAnnotated(field, ManyToOne.class)
-                        || AnnotationUtils.isAnnotated(field, OneToOne.class)) {
-                    String joinCol = AnnotationUtils.isAnnotated(field, ManyToOne.class) ?
-                            AnnotationUtils.findAnnotation(field, ManyToOne.class).joinColumn() :
-                            AnnotationUtils.findAnnotation(field, OneToOne.class).joinColumn();
-                    setClauses.add(joinCol + " = ?");
-                    values.add(val != null ? getIdValue(val) : null);
-                } else {
-                    setClauses.add(getColumnName(field) + " = ?");
-                    values.add(val);
+    private void upsertGroup(Connection conn, EntitySqlTemplates sql, EntitySqlTemplates.ParameterizedSql upsert,
+                             FieldMapping generatedIdField, List<?> entities) throws SQLException {
+        try (PreparedStatement stmt = generatedIdField == null ?
+                conn.prepareStatement(upsert.sql()) :
+                conn.prepareStatement(upsert.sql(), sql.getGeneratedKeyColumns())) {
+            for (int from = 0; from < entities.size(); from += JDBC_BATCH_SIZE) {
+                List<?> chunk = entities.subList(from, Math.min(from + JDBC_BATCH_SIZE, entities.size()));
+                for (Object entity : chunk) {
+                    bindFields(stmt, upsert.fields(), entity);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                if (generatedIdField != null) {
+                    readGeneratedIds(stmt, generatedIdField, chunk);
                 }
             }
+        }
+    }
 
-            if (setClauses.isEmpty()) return;
+    /**
+     * Обновление сущности в бд. Для сущности с
+     * {@link com.github.baibeicha.database.annotation.Version} проверяется и увеличивается версия.
+     * @param conn подключение к бд.
+     * @param entity сущность для изменения.
+     * @throws OptimisticLockException строка с текущей версией сущности не найдена.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void executeUpdate(Connection conn, Object entity) throws DatabaseException {
+        EntityMetadata<?> metadata = getMetadata(entity.getClass());
+        EntitySqlTemplates sql = getSqlTemplates(metadata);
+        BitSet columns = sql.getUpdateColumns(entity);
+        if (columns != null) {
+            executeUpdateBatch(conn, List.of(entity), columns);
+            return;
+        }
+        try {
+            if (sql.getUpdateSql() == null) return;
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql.getUpdateSql())) {
+                bindUpdate(stmt, sql.getUpdateFields(), metadata.getIdField(), entity);
+                checkVersion(sql.getVersionField(), entity, stmt.executeUpdate());
+            }
+            incrementVersion(sql.getVersionField(), entity);
+            evictFromCache(entity);
+        } catch (OptimisticLockException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseException("Failed to execute UPDATE", e);
+        }
+    }
+
+    /**
+     * Пакетное обновление сущностей одного типа, см. {@link #executeUpdate(Connection, Object)}.
+     * @param conn подключение к бд.
+     * @param entities сущности одного типа.
+     * @throws OptimisticLockException строка с текущей версией одной из сущностей не найдена.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void executeUpdateBatch(Connection conn, List<?> entities) throws DatabaseException {
+        if (entities.isEmpty()) return;
+        EntityMetadata<?> metadata = getBatchMetadata(entities);
+        EntitySqlTemplates sql = getSqlTemplates(metadata);
+        if (sql.hasLazyColumns()) {
+            Map<BitSet, List<Object>> groups = new LinkedHashMap<>();
+            for (Object entity : entities) {
+                groups.computeIfAbsent(sql.getUpdateColumns(entity), k -> new ArrayList<>()).add(entity);
+            }
+            for (Map.Entry<BitSet, List<Object>> group : groups.entrySet()) {
+                executeUpdateBatch(conn, group.getValue(), group.getKey());
+            }
+            return;
+        }
+        if (sql.getUpdateSql() == null) return;
+        updateBatch(conn, entities, metadata, sql.getUpdateSql(), sql.getUpdateFields());
+    }
 
-            String sql = "UPDATE " + tableName
-                    + " SET " + String.join(", ", setClauses)
-                    + " WHERE " + idColName + " = ?";
-            values.add(idValue);
+    /**
+     * Пакетное обновление части колонок у сущностей одного типа.
+     * @param conn подключение к бд.
+     * @param entities сущности одного типа.
+     * @param columns индексы обновляемых колонок в порядке {@link EntityMetadata#getColumnFields()},
+     *                например {@link com.github.baibeicha.database.context.EntitySnapshot#getDirtyColumns}.
+     * @throws OptimisticLockException строка с текущей версией одной из сущностей не найдена.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void executeUpdateBatch(Connection conn, List<?> entities, BitSet columns) throws DatabaseException {
+        if (entities.isEmpty()) return;
+        EntityMetadata<?> metadata = getBatchMetadata(entities);
+        EntitySqlTemplates.ParameterizedSql update = getSqlTemplates(metadata).getPartialUpdate(columns);
+        if (update == null) return;
+        updateBatch(conn, entities, metadata, update.sql(), update.fields());
+    }
 
+    private void updateBatch(Connection conn, List<?> entities, EntityMetadata<?> metadata,
+                             String sql, FieldMapping[] fields) throws DatabaseException {
+        try {
+            FieldMapping idField = metadata.getIdField();
+            FieldMapping versionField = metadata.getVersionField();
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                setParameters(stmt, values.toArray());
-                stmt.executeUpdate();
+                for (int from = 0; from < entities.size(); from += JDBC_BATCH_SIZE) {
+                    List<?> chunk = entities.subList(from, Math.min(from + JDBC_BATCH_SIZE, entities.size()));
+                    for (Object entity : chunk) {
+                        bindUpdate(stmt, fields, idField, entity);
+                        stmt.addBatch();
+                    }
+                    checkVersions(versionField, chunk, stmt.executeBatch());
+                }
+            }
+            if (versionField != null) {
+                for (Object entity : entities) {
+                    incrementVersion(versionField, entity);
+                }
             }
+            evictFromCache(entities);
+        } catch (OptimisticLockException e) {
+            throw e;
         } catch (Exception e) {
-            throw new DatabaseException("Failed to execute UPDATE", e);
+            throw new DatabaseException("Failed to execute batch UPDATE", e);
         }
     }
 
     /**
-     * Удаление объекта
+     * Удаление объекта. Для сущности с {@link com.github.baibeicha.database.annotation.Version}
+     * удаляется только строка с текущей версией.
      *
      * @param conn подключение к бд.
      * @param entity сущность для удаления.
+     * @throws OptimisticLockException строка с текущей версией сущности не найдена.
      * @throws DatabaseException ошибка бд.
      */
     public void executeDelete(Connection conn, Object entity) throws DatabaseException {
         try {
-            Class<?> clazz = entity.getClass();
-            String sql = "DELETE FROM " + getTableName(clazz) + " WHERE " + getIdColumnName(clazz) + " = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setObject(1, getIdValue(entity));
-                stmt.executeUpdate();
+            EntityMetadata<?> metadata = getMetadata(entity.getClass());
+            try (PreparedStatement stmt = conn.prepareStatement(getSqlTemplates(metadata).getDeleteSql())) {
+                bindDelete(stmt, metadata, entity);
+                checkVersion(metadata.getVersionField(), entity, stmt.executeUpdate());
             }
+            evictFromCache(entity);
+        } catch (OptimisticLockException e) {
+            throw e;
         } catch (Exception e) {
             throw new DatabaseException("Failed to execute DELETE", e);
         }
     }
 
+    /**
+     * Пакетное удаление сущностей одного типа, см. {@link #executeDelete(Connection, Object)}.
+     * @param conn подключение к бд.
+     * @param entities сущности одного типа.
+     * @throws OptimisticLockException строка с текущей версией одной из сущностей не найдена.
+     * @throws DatabaseException ошибка бд.
+     */
+    public void executeDeleteBatch(Connection conn, List<?> entities) throws DatabaseException {
+        if (entities.isEmpty()) return;
+        try {
+            EntityMetadata<?> metadata = getBatchMetadata(entities);
+            try (PreparedStatement stmt = conn.prepareStatement(getSqlTemplates(metadata).getDeleteSql())) {
+                for (int from = 0; from < entities.size(); from += JDBC_BATCH_SIZE) {
+                    List<?> chunk = entities.subList(from, Math.min(from + JDBC_BATCH_SIZE, entities.size()));
+                    for (Object entity : chunk) {
+                        bindDelete(stmt, metadata, entity);
+                        stmt.addBatch();
+                    }
+                    checkVersions(metadata.getVersionField(), chunk, stmt.executeBatch());
+                }
+            }
+            evictFromCache(entities);
+        } catch (OptimisticLockException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DatabaseException("Failed to execute batch DELETE", e);
+        }
+    }
+
+    private EntityMetadata<?> getBatchMetadata(List<?> entities) throws DatabaseException {
+        Class<?> clazz = entities.getFirst().getClass();
+        for (Object entity : entities) {
+            if (entity.getClass() != clazz) {
+                throw new DatabaseException("Batch contains entities of different types: "
+                        + clazz.getName() + " and " + entity.getClass().getName());
+            }
+        }
+        return getMetadata(clazz);
+    }
+
+    private void bindUpdate(PreparedStatement stmt, FieldMapping[] fields, FieldMapping idField, Object entity)
+            throws SQLException, DatabaseException {
+        if (idField.get(entity) == null) {
+            throw new DatabaseException("Cannot update entity with null ID");
+        }
+        bindFields(stmt, fields, entity);
+    }
+
+    private void bindDelete(PreparedStatement stmt, EntityMetadata<?> metadata, Object entity)
+            throws SQLException, DatabaseException {
+        stmt.setObject(1, metadata.getIdField().get(entity));
+        if (metadata.getVersionField() != null) {
+            stmt.setObject(2, metadata.getVersionField().get(entity));
+        }
+    }
+
+    private void checkVersion(FieldMapping versionField, Object entity, int rows) throws DatabaseException {
+        if (versionField != null && rows == 0) {
+            throw new OptimisticLockException(entity, getIdValue(entity), versionField.get(entity));
+        }
+    }
+
+    /**
+     * Проверка результатов пакета по порядку сущностей.
+     * {@link java.sql.Statement#SUCCESS_NO_INFO} считается успехом.
+     */
+    private void checkVersions(FieldMapping versionField, List<?> entities, int[] rows) throws DatabaseException {
+        if (versionField == null) {
+            return;
+        }
+        for (int i = 0; i < rows.length && i < entities.size(); i++) {
+            checkVersion(versionField, entities.get(i), rows[i]);
+        }
+    }
+
+    /**
+     * Установить версию 0 новой сущности, у которой версия не задана.
+     */
+    static void initVersion(FieldMapping versionField, Object entity) {
+        if (versionField != null && versionField.get(entity) == null) {
+            versionField.set(entity, isIntVersion(versionField) ? (Object) 0 : (Object) 0L);
+        }
+    }
+
+    private static void incrementVersion(FieldMapping versionField, Object entity) {
+        if (versionField == null) {
+            return;
+        }
+        long next = ((Number) versionField.get(entity)).longValue() + 1;
+        versionField.set(entity, isIntVersion(versionField) ? (Object) (int) next : (Object) next);
+    }
+
+    private static boolean isIntVersion(FieldMapping versionField) {
+        return versionField.getType() == int.class || versionField.getType() == Integer.class;
+    }
+
+    /**
+     * Установка значений полей сущности как параметров запроса по порядку.
+     * Для связей ManyToOne/OneToOne подставляется id связанной сущности.
+     */
+    private void bindFields(PreparedStatement stmt, FieldMapping[] fields, Object entity)
+            throws SQLException, DatabaseException {
+        for (int i = 0; i < fields.length; i++) {
+            stmt.setObject(i + 1, columnValue(fields[i], entity));
+        }
+    }
+
+    /**
+     * Значение колонки поля: для связей ManyToOne/OneToOne - id связанной сущности,
+     * для {@link LazyValue} - его значение, незагруженное не загружается и пишется как NULL.
+     */
+    Object columnValue(FieldMapping field, Object entity) {
+        Object value = field.get(entity);
+        if (field.isToOne()) {
+            return getIdValue(value);
+        }
+        if (value instanceof LazyValue<?> lazy) {
+            return lazy.isLoaded() ? lazy.get() : null;
+        }
+        return value;
+    }
+
+    private void readGeneratedIds(PreparedStatement stmt, FieldMapping idField, List<?> entities)
+            throws SQLException {
+        try (ResultSet rs = stmt.getGeneratedKeys()) {
+            for (Object entity : entities) {
+                if (!rs.next()) {
+                    return;
+                }
+                Object newId = rs.getObject(1);
+                if (newId instanceof Number) {
+                    if (idField.getType() == long.class || idField.getType() == Long.class)
+                        newId = ((Number) newId).longValue();
+                    else if (idField.getType() == int.class || idField.getType() == Integer.class)
+                        newId = ((Number) newId).intValue();
+                }
+                idField.set(entity, newId);
+            }
+        }
+    }
+
     /**
      * Создаёт таблицу в базе данных для @Entity
      *
@@ -359,7 +997,7 @@ public class Database implements AutoCloseable {
                         AnnotationUtils.findAnnotation(field, OneToOne.class).cascade() :
                         AnnotationUtils.findAnnotation(field, ManyToOne.class).cascade();
 
-                Class<?> targetClass = field.getType();
+                Class<?> targetClass = getMetadata(entityClass).getField(field.getName()).getTargetType();
                 if (targetClass.isPrimitive()
                         || Number.class.isAssignableFrom(targetClass)
                         || targetClass == String.class) {
@@ -401,7 +1039,9 @@ public class Database implements AutoCloseable {
                     unique = col.unique();
                 }
 
-                String sqlType = dialect.resolveType(field.getType(), length);
+                FieldMapping mapping = getMetadata(entityClass).getField(field.getName());
+                Class<?> valueType = mapping != null ? mapping.getTargetType() : field.getType();
+                String sqlType = dialect.resolveType(valueType, length);
                 StringBuilder def = new StringBuilder(colName).append(" ").append(sqlType);
 
                 if (!nullable) {
@@ -427,44 +1067,147 @@ public class Database implements AutoCloseable {
         update(sql);
     }
 
+    /**
+     * Маппер типа: зарегистрированный, {@link AutoRowMapper} для @Entity или
+     * {@link ProjectionMapper} для record, DTO, интерфейсов, скаляров и {@code Map}.
+     */
     @SuppressWarnings("unchecked")
-    private <T> RowMapper<T> getMapper(Class<T> clazz) throws DatabaseException {
+    <T> RowMapper<T> getMapper(Class<T> clazz) throws DatabaseException {
         return (RowMapper<T>) entityMappers.computeIfAbsent(clazz, k -> {
             if (!AnnotationUtils.isAnnotated(k, Entity.class))
-                throw new RuntimeException("Class is not @Entity: " + k.getName());
+                return new ProjectionMapper<>(k);
             return new AutoRowMapper<>(k, this);
         });
     }
 
+    /**
+     * Маппер типа, привязанный к колонкам результата. EAGER связи сущностей собираются в {@code relations}.
+     */
+    <T> RowMapper<T> bindMapper(Class<T> clazz, ResultSetMetaData rsMetaData, RelationLoader relations)
+            throws SQLException, DatabaseException {
+        RowMapper<T> mapper = getMapper(clazz);
+        if (mapper instanceof AutoRowMapper<T> autoMapper) {
+            return autoMapper.bind(rsMetaData, relations);
+        }
+        if (mapper instanceof ProjectionMapper<T> projection) {
+            return projection.bind(rsMetaData);
+        }
+        return mapper;
+    }
+
+    /**
+     * @return true, если сущность хранится в кеше второго уровня. Сущности
+     * с собственным маппером не кешируются: собрать их из значений колонок нельзя.
+     */
+    boolean isCached(Class<?> clazz) {
+        return secondLevelCache.isCacheable(clazz) && getMapper(clazz) instanceof AutoRowMapper;
+    }
+
+    /**
+     * Собрать сущность из состояния кеша второго уровня, EAGER связи откладываются в {@code relations}.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T hydrate(Class<T> clazz, Object[] state, RelationLoader relations) throws DatabaseException {
+        return ((AutoRowMapper<T>) getMapper(clazz)).hydrate(state, relations);
+    }
+
+    /**
+     * Кеш второго уровня заполняется только вне транзакции: прочитанное в ней состояние
+     * может быть не зафиксировано или откатиться, а кеш виден всем потокам.
+     * @return true, если подключение в режиме auto-commit.
+     */
+    static boolean canPopulateCache(Connection conn) {
+        try {
+            return conn.getAutoCommit();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Положить состояние сущности в кеш второго уровня, если её тип кешируется.
+     */
+    @SuppressWarnings("unchecked")
+    <T> void putInCache(T entity) throws DatabaseException {
+        Class<T> clazz = (Class<T>) entity.getClass();
+        if (isCached(clazz)) {
+            secondLevelCache.put(clazz, getIdValue(entity),
+                    ((AutoRowMapper<T>) getMapper(clazz)).dehydrate(entity));
+        }
+    }
+
+    /**
+     * Удалить изменённую сущность из кеша второго уровня и результаты запросов по её таблице.
+     */
+    void evictFromCache(Object entity) throws DatabaseException {
+        if (secondLevelCache.isCacheable(entity.getClass())) {
+            secondLevelCache.evict(entity.getClass(), getIdValue(entity));
+        }
+        invalidateQueries(entity.getClass());
+    }
+
+    /**
+     * Удалить изменённые сущности одного типа из кешей, см. {@link #evictFromCache(Object)}.
+     */
+    void evictFromCache(List<?> entities) throws DatabaseException {
+        Class<?> clazz = entities.getFirst().getClass();
+        if (secondLevelCache.isCacheable(clazz)) {
+            for (Object entity : entities) {
+                secondLevelCache.evict(clazz, getIdValue(entity));
+            }
+        }
+        invalidateQueries(clazz);
+    }
+
+    private void invalidateQueries(Class<?> entityClass) {
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            cache.invalidate(getTableName(entityClass));
+        }
+    }
+
+    /**
+     * Получить метаданные сущности. Вычисляются один раз на класс.
+     * @param clazz тип сущности.
+     * @return метаданные сущности.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> EntityMetadata<T> getMetadata(Class<T> clazz) {
+        return (EntityMetadata<T>) metadataCache.computeIfAbsent(clazz, EntityMetadata::of);
+    }
+
+    /**
+     * Получить готовые SQL запросы CRUD для сущности. Строятся один раз на класс.
+     * @param clazz тип сущности.
+     * @return запросы сущности.
+     * @throws DatabaseException если у сущности нет @Id.
+     */
+    public EntitySqlTemplates getSqlTemplates(Class<?> clazz) throws DatabaseException {
+        return getSqlTemplates(getMetadata(clazz));
+    }
+
+    private EntitySqlTemplates getSqlTemplates(EntityMetadata<?> metadata) throws DatabaseException {
+        EntitySqlTemplates templates = sqlTemplatesCache.get(metadata.getEntityClass());
+        if (templates == null) {
+            templates = sqlTemplatesCache.computeIfAbsent(metadata.getEntityClass(),
+                    k -> EntitySqlTemplates.of(metadata, dialect));
+        }
+        return templates;
+    }
+
     /**
      * Получает имя таблицы из аннотации @Table или генерирует из имени класса.
      */
     public String getTableName(Class<?> clazz) {
-        return tableNameCache.computeIfAbsent(clazz, k -> {
-            if (AnnotationUtils.isAnnotated(k, Table.class)) {
-                return AnnotationUtils.findAnnotation(k, Table.class).name();
-            }
-            return k.getSimpleName().toLowerCase();
-        });
+        return tableNameCache.computeIfAbsent(clazz, EntityMetadata::resolveTableName);
     }
 
     String getColumnName(Field field) {
-        if (AnnotationUtils.isAnnotated(field, Column.class)) {
-            return AnnotationUtils.findAnnotation(field, Column.class).name();
-        }
-        return field.getName().toLowerCase();
+        return EntityMetadata.resolveColumnName(field);
     }
 
     Field getIdField(Class<?> clazz) {
-        return idFieldCache.computeIfAbsent(clazz, k -> {
-            for (Field f : k.getDeclaredFields()) {
-                if (AnnotationUtils.isAnnotated(f, Id.class)) {
-                    f.setAccessible(true);
-                    return f;
-                }
-            }
-            throw new RuntimeException("Missing @Id on " + k.getName());
-        });
+        return getMetadata(clazz).getIdField().getField();
     }
 
     String getIdColumnName(Class<?> clazz) {
@@ -478,17 +1221,17 @@ public class Database implements AutoCloseable {
 
     /**
      * Получение значения ID у сущности.
+     * Для незагруженной {@link LazyReference} возвращает внешний ключ без загрузки.
      * @param entity сущность бд.
      * @return значение ID.
      * @throws DatabaseException ошибка бд.
      */
     public Object getIdValue(Object entity) throws DatabaseException {
         if (entity == null) return null;
-        try {
-            return getIdField(entity.getClass()).get(entity);
-        } catch (IllegalAccessException e) {
-            throw new DatabaseException("Could not read @Id", e);
+        if (entity instanceof LazyReference<?> reference) {
+            return reference.isLoaded() ? getIdValue(reference.get()) : reference.getId();
         }
+        return getMetadata(entity.getClass()).getIdField().get(entity);
     }
 
     boolean isIgnoredField(Field field) {
@@ -497,7 +1240,7 @@ public class Database implements AutoCloseable {
                 AnnotationUtils.isAnnotated(field, ManyToMany.class);
     }
 
-    private void setParameters(PreparedStatement stmt, Object... params) throws SQLException {
+    void setParameters(PreparedStatement stmt, Object... params) throws SQLException {
         for (int i = 0; i < params.length; i++) {
             stmt.setObject(i + 1, params[i]);
         }
@@ -505,6 +1248,10 @@ public class Database implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        AsyncDatabase asyncDatabase = async;
+        if (asyncDatabase != null) {
+            asyncDatabase.shutdown();
+        }
         connectionManager.shutdownPool();
     }
 }
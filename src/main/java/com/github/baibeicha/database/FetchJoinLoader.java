@@ -0,0 +1,167 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.FetchType;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.FieldMapping;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Загрузка сущности по id вместе с EAGER связями ManyToOne/OneToOne одним запросом:
+ * <pre>{@code
+ * SELECT t0.id AS c0, ..., t1.id AS c5, ... FROM person t0
+ * LEFT JOIN country t1 ON t1.id = t0.country_id WHERE t0.id = ?
+ * }</pre>
+ * Колонки читаются по номеру, поэтому алиасы только позиционные: длина имён таблиц
+ * и колонок не упирается в ограничение длины идентификатора бд.
+ * Связи присоединяются до заданной глубины, более глубокие загружаются
+ * через {@link RelationLoader} как обычно. Строка результата собирается в граф
+ * объектов за один проход: сначала присоединённые сущности, затем их владельцы.
+ */
+final class FetchJoinLoader<T> {
+
+    /**
+     * Сущность запроса: маппер, индексы её колонок в результате, номер узла присоединённой
+     * сущности для каждого поля (-1 - не присоединена), индекс колонки id
+     * и хранится ли сущность в кеше второго уровня.
+     */
+    private record Node(AutoRowMapper<?> mapper, int[] indexes, int[] children, int idIndex, boolean cached) {
+    }
+
+    private final Database database;
+    private final List<Node> nodes = new ArrayList<>();
+    private final String sql;
+    private int columnCount;
+
+    private FetchJoinLoader(Database database, Class<T> entityClass, int depth) {
+        this.database = database;
+        StringBuilder columns = new StringBuilder();
+        StringBuilder joins = new StringBuilder();
+        EntityMetadata<T> metadata = database.getMetadata(entityClass);
+        addNode(metadata, "t0", 0, depth, columns, joins);
+        this.sql = "SELECT " + columns + " FROM " + metadata.getTableName() + " t0" + joins
+                + " WHERE t0." + metadata.getIdField().getColumnName() + " = ?";
+    }
+
+    /**
+     * @return загрузчик или null, если у сущности нет EAGER связей, которые можно присоединить.
+     */
+    static <T> FetchJoinLoader<T> of(Database database, Class<T> entityClass, int depth) {
+        if (depth <= 0 || !isJoinable(database, entityClass)) {
+            return null;
+        }
+        FetchJoinLoader<T> loader = new FetchJoinLoader<>(database, entityClass, depth);
+        return loader.nodes.size() > 1 ? loader : null;
+    }
+
+    private int addNode(EntityMetadata<?> metadata, String alias, int depth, int maxDepth,
+                        StringBuilder columns, StringBuilder joins) {
+        List<FieldMapping> fields = metadata.getColumnFields();
+        int[] indexes = new int[fields.size()];
+        int[] children = new int[fields.size()];
+        Arrays.fill(children, -1);
+        int node = nodes.size();
+        nodes.add(null);
+
+        List<Integer> joined = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            FieldMapping field = fields.get(i);
+            if (!field.isSelected()) {
+                continue;
+            }
+            if (field.isToOne() && field.getFetchType() == FetchType.EAGER && depth < maxDepth
+                    && isJoinable(database, field.getTargetType())) {
+                joined.add(i);
+                continue;
+            }
+            if (!columns.isEmpty()) {
+                columns.append(", ");
+            }
+            columns.append(alias).append('.').append(field.getColumnName()).append(" AS c").append(columnCount);
+            indexes[i] = ++columnCount;
+        }
+
+        for (int i : joined) {
+            FieldMapping field = fields.get(i);
+            EntityMetadata<?> target = database.getMetadata(field.getTargetType());
+            String childAlias = "t" + nodes.size();
+            joins.append(" LEFT JOIN ").append(target.getTableName()).append(' ').append(childAlias)
+                    .append(" ON ").append(childAlias).append('.').append(target.getIdField().getColumnName())
+                    .append(" = ").append(alias).append('.').append(field.getColumnName());
+            children[i] = addNode(target, childAlias, depth + 1, maxDepth, columns, joins);
+        }
+
+        int idIndex = indexes[fields.indexOf(metadata.getIdField())];
+        nodes.set(node, new Node((AutoRowMapper<?>) database.getMapper(metadata.getEntityClass()),
+                indexes, children, idIndex, database.isCached(metadata.getEntityClass())));
+        return node;
+    }
+
+    /**
+     * Присоединять можно сущности с @Id, которые читает {@link AutoRowMapper}.
+     */
+    private static boolean isJoinable(Database database, Class<?> entityClass) {
+        return database.getMetadata(entityClass).hasId() && database.getMapper(entityClass) instanceof AutoRowMapper;
+    }
+
+    /**
+     * @param conn подключение к бд.
+     * @param session сессия, к которой привязываются LAZY связи, или null.
+     * @param id значение id.
+     * @return найденные сущности.
+     * @throws DatabaseException ошибка бд.
+     */
+    List<T> load(Connection conn, Session session, Object id) throws DatabaseException {
+        List<T> results = new ArrayList<>(1);
+        List<Object> toCache = new ArrayList<>();
+        RelationLoader relations = new RelationLoader(database, session);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            database.setParameters(stmt, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    results.add(mapRow(rs, relations, toCache));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Error in fetch join: " + sql, e);
+        }
+        relations.load(conn);
+        // в кеш второго уровня только после загрузки отложенных связей, иначе их ключи потеряются
+        if (Database.canPopulateCache(conn)) {
+            for (Object entity : toCache) {
+                database.putInCache(entity);
+            }
+        }
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T mapRow(ResultSet rs, RelationLoader relations, List<Object> toCache) throws SQLException {
+        Object[] instances = new Object[nodes.size()];
+        // присоединённые узлы идут после своих владельцев, поэтому обход с конца
+        for (int n = nodes.size() - 1; n >= 0; n--) {
+            Node node = nodes.get(n);
+            if (n > 0 && rs.getObject(node.idIndex()) == null) {
+                continue;
+            }
+            Object[] joined = new Object[node.children().length];
+            for (int i = 0; i < joined.length; i++) {
+                if (node.children()[i] >= 0) {
+                    joined[i] = instances[node.children()[i]];
+                }
+            }
+            instances[n] = node.mapper().mapRow(rs, node.indexes(), joined, relations);
+            if (n > 0 && node.cached()) {
+                toCache.add(instances[n]);
+            }
+        }
+        return (T) instances[0];
+    }
+}
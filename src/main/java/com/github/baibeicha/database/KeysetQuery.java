@@ -0,0 +1,72 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.dialect.SqlDialect;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.FieldMapping;
+import com.github.baibeicha.database.page.PageRequest;
+import com.github.baibeicha.database.page.Slice;
+
+import java.util.List;
+
+/**
+ * SQL запрос одной страницы по ключу: {@code WHERE (sort, id) > (?, ?) ORDER BY sort, id LIMIT size + 1}.
+ * Лишняя строка только показывает, есть ли следующая страница, и в результат не попадает.
+ */
+final class KeysetQuery {
+
+    private final PageRequest request;
+    private final FieldMapping sortField;
+    private final FieldMapping idField;
+    private final String sql;
+    private final Object[] parameters;
+
+    KeysetQuery(Database database, Class<?> entityClass, PageRequest request) throws DatabaseException {
+        EntityMetadata<?> metadata = database.getMetadata(entityClass);
+        SqlDialect dialect = database.getDialect();
+        this.request = request;
+        this.idField = metadata.getIdField();
+        this.sortField = request.sortField() == null ? idField : metadata.getField(request.sortField());
+        if (sortField == null || !(sortField.isId() || sortField.getKind() == FieldMapping.Kind.BASIC)) {
+            throw new DatabaseException("Cannot page " + entityClass.getName() + " by field: " + request.sortField());
+        }
+
+        String idColumn = idField.getColumnName();
+        StringBuilder sql = new StringBuilder("SELECT ").append(metadata.getSelectColumns())
+                .append(" FROM ").append(metadata.getTableName());
+        if (sortField.isId()) {
+            if (!request.isFirst()) {
+                sql.append(" WHERE ").append(idColumn).append(" > ?");
+            }
+            sql.append(" ORDER BY ").append(idColumn);
+            this.parameters = request.isFirst() ? new Object[0] : new Object[]{request.afterId()};
+        } else {
+            String sortColumn = sortField.getColumnName();
+            if (!request.isFirst()) {
+                sql.append(" WHERE ").append(dialect.keysetCondition(sortColumn, idColumn));
+            }
+            sql.append(" ORDER BY ").append(sortColumn).append(", ").append(idColumn);
+            this.parameters = request.isFirst() ?
+                    new Object[0] :
+                    dialect.keysetParameters(request.afterValue(), request.afterId());
+        }
+        this.sql = dialect.limit(sql.toString(), request.size() + 1);
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    Object[] getParameters() {
+        return parameters;
+    }
+
+    <T> Slice<T> toSlice(List<T> rows) {
+        if (rows.size() <= request.size()) {
+            return new Slice<>(rows, request, null);
+        }
+        List<T> content = rows.subList(0, request.size());
+        T last = content.getLast();
+        return new Slice<>(content, request, request.after(sortField.get(last), idField.get(last)));
+    }
+}
@@ -0,0 +1,326 @@
+package com.github.baibeicha.database;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Маппер результата на класс без {@code @Entity}:
+ * <ul>
+ *     <li>скаляр ({@code String}, числа, {@code Boolean}, {@code UUID}, даты, перечисления) - из единственной колонки;</li>
+ *     <li>{@code Map<String, Object>} - все колонки строки по меткам;</li>
+ *     <li>record - через канонический конструктор;</li>
+ *     <li>интерфейс - прокси, методы {@code getName()}/{@code isName()}/{@code name()} возвращают колонки;</li>
+ *     <li>прочий класс - конструктор без аргументов и запись полей.</li>
+ * </ul>
+ * Компоненты, поля и методы сопоставляются с метками колонок без учёта регистра и
+ * подчёркиваний ({@code createdAt} - {@code created_at}), отсутствующие колонки дают
+ * null или значение по умолчанию примитива.
+ * <p>
+ * План чтения строится один раз на набор меток колонок результата.
+ */
+final class ProjectionMapper<T> implements RowMapper<T> {
+
+    private final Class<T> targetClass;
+    private final Map<List<String>, RowMapper<T>> plans = new ConcurrentHashMap<>();
+
+    ProjectionMapper(Class<T> targetClass) {
+        this.targetClass = targetClass;
+    }
+
+    @Override
+    public T mapRow(ResultSet rs) throws SQLException {
+        return bind(rs.getMetaData()).mapRow(rs);
+    }
+
+    /**
+     * @param rsMetaData метаданные результата запроса.
+     * @return маппер для строк результата с такими колонками.
+     * @throws SQLException ошибка чтения метаданных или класс нельзя собрать из этих колонок.
+     */
+    RowMapper<T> bind(ResultSetMetaData rsMetaData) throws SQLException {
+        String[] labels = new String[rsMetaData.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = rsMetaData.getColumnLabel(i + 1);
+        }
+        List<String> key = Arrays.asList(labels);
+        RowMapper<T> plan = plans.get(key);
+        if (plan == null) {
+            plan = createPlan(labels);
+            plans.putIfAbsent(key, plan);
+        }
+        return plan;
+    }
+
+    @SuppressWarnings("unchecked")
+    private RowMapper<T> createPlan(String[] labels) throws SQLException {
+        if (isScalar(targetClass)) {
+            if (labels.length != 1) {
+                throw new SQLException("Scalar projection to " + targetClass.getName()
+                        + " expects one column, got " + labels.length);
+            }
+            return rs -> (T) convert(rs.getObject(1), targetClass);
+        }
+        if (targetClass == Map.class) {
+            return mapPlan(labels);
+        }
+        if (targetClass.isRecord()) {
+            return recordPlan(labels);
+        }
+        if (targetClass.isInterface()) {
+            return interfacePlan(labels);
+        }
+        return beanPlan(labels);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RowMapper<T> mapPlan(String[] labels) {
+        return rs -> {
+            Map<String, Object> row = new LinkedHashMap<>(labels.length * 4 / 3 + 1);
+            for (int i = 0; i < labels.length; i++) {
+                row.put(labels[i], rs.getObject(i + 1));
+            }
+            return (T) row;
+        };
+    }
+
+    private RowMapper<T> recordPlan(String[] labels) throws SQLException {
+        RecordComponent[] components = targetClass.getRecordComponents();
+        Class<?>[] types = new Class<?>[components.length];
+        int[] indexes = new int[components.length];
+        Map<String, Integer> columns = columnIndexes(labels);
+        for (int i = 0; i < components.length; i++) {
+            types[i] = components[i].getType();
+            indexes[i] = columns.getOrDefault(normalize(components[i].getName()), 0);
+        }
+
+        MethodHandle constructor;
+        try {
+            Constructor<T> canonical = targetClass.getDeclaredConstructor(types);
+            canonical.setAccessible(true);
+            constructor = MethodHandles.lookup().unreflectConstructor(canonical)
+                    .asSpreader(Object[].class, types.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new SQLException("No accessible canonical constructor in " + targetClass.getName(), e);
+        }
+
+        return rs -> {
+            Object[] args = new Object[types.length];
+            for (int i = 0; i < args.length; i++) {
+                Object value = indexes[i] == 0 ? null : convert(rs.getObject(indexes[i]), types[i]);
+                args[i] = value == null && types[i].isPrimitive() ? defaultValue(types[i]) : value;
+            }
+            try {
+                return targetClass.cast((Object) constructor.invokeExact(args));
+            } catch (Throwable e) {
+                throw new SQLException("Failed to map row to " + targetClass.getName(), e);
+            }
+        };
+    }
+
+    private RowMapper<T> interfacePlan(String[] labels) {
+        Map<String, Integer> columns = columnIndexes(labels);
+        Map<Method, Integer> slots = new HashMap<>();
+        List<Integer> indexes = new ArrayList<>();
+        List<Class<?>> types = new ArrayList<>();
+        for (Method method : targetClass.getMethods()) {
+            if (method.isDefault() || Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0) {
+                continue;
+            }
+            slots.put(method, indexes.size());
+            indexes.add(columns.getOrDefault(normalize(propertyName(method.getName())), 0));
+            types.add(method.getReturnType());
+        }
+
+        ClassLoader loader = targetClass.getClassLoader();
+        Class<?>[] interfaces = {targetClass};
+        return rs -> {
+            Object[] values = new Object[indexes.size()];
+            for (int i = 0; i < values.length; i++) {
+                Class<?> type = types.get(i);
+                Object value = indexes.get(i) == 0 ? null : convert(rs.getObject(indexes.get(i)), type);
+                values[i] = value == null && type.isPrimitive() ? defaultValue(type) : value;
+            }
+            InvocationHandler handler = (proxy, method, args) -> {
+                Integer slot = slots.get(method);
+                if (slot != null) {
+                    return values[slot];
+                }
+                if (method.isDefault()) {
+                    return InvocationHandler.invokeDefault(proxy, method, args);
+                }
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "toString" -> targetClass.getSimpleName() + Arrays.toString(values);
+                    default -> throw new UnsupportedOperationException(method.toString());
+                };
+            };
+            return targetClass.cast(Proxy.newProxyInstance(loader, interfaces, handler));
+        };
+    }
+
+    private RowMapper<T> beanPlan(String[] labels) throws SQLException {
+        MethodHandle constructor;
+        try {
+            Constructor<T> noArgs = targetClass.getDeclaredConstructor();
+            noArgs.setAccessible(true);
+            constructor = MethodHandles.lookup().unreflectConstructor(noArgs)
+                    .asType(MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new SQLException("No accessible no-args constructor in " + targetClass.getName(), e);
+        }
+
+        Map<String, Integer> columns = columnIndexes(labels);
+        List<MethodHandle> setters = new ArrayList<>();
+        List<Class<?>> types = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (Class<?> type = targetClass; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                Integer index = columns.get(normalize(field.getName()));
+                if (index == null || Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    setters.add(MethodHandles.lookup().unreflectSetter(field)
+                            .asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    throw new SQLException("Cannot access field " + field, e);
+                }
+                types.add(field.getType());
+                indexes.add(index);
+            }
+        }
+
+        return rs -> {
+            try {
+                Object instance = (Object) constructor.invokeExact();
+                for (int i = 0; i < setters.size(); i++) {
+                    Object value = convert(rs.getObject(indexes.get(i)), types.get(i));
+                    if (value != null) {
+                        setters.get(i).invokeExact(instance, value);
+                    }
+                }
+                return targetClass.cast(instance);
+            } catch (SQLException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new SQLException("Failed to map row to " + targetClass.getName(), e);
+            }
+        };
+    }
+
+    /**
+     * Нормализованная метка -> индекс колонки, при повторе меток берётся первая.
+     */
+    private static Map<String, Integer> columnIndexes(String[] labels) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = labels.length; i >= 1; i--) {
+            columns.put(normalize(labels[i - 1]), i);
+        }
+        return columns;
+    }
+
+    private static String normalize(String name) {
+        return name.replace("_", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static String propertyName(String methodName) {
+        if (methodName.length() > 3 && methodName.startsWith("get")) {
+            return methodName.substring(3);
+        }
+        if (methodName.length() > 2 && methodName.startsWith("is")) {
+            return methodName.substring(2);
+        }
+        return methodName;
+    }
+
+    private static Object defaultValue(Class<?> primitive) {
+        return Array.get(Array.newInstance(primitive, 1), 0);
+    }
+
+    static boolean isScalar(Class<?> type) {
+        return type.isPrimitive() || type == String.class || Number.class.isAssignableFrom(type)
+                || type == Boolean.class || type == Character.class || type == UUID.class
+                || type == byte[].class || type.isEnum() || type.getPackageName().equals("java.time")
+                || java.util.Date.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Приведение значения JDBC к типу компонента, поля или скалярного результата.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Object convert(Object value, Class<?> type) {
+        if (value == null) {
+            return null;
+        }
+        Class<?> boxed = type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+        if (boxed.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof Number number) {
+            if (boxed == Long.class) return number.longValue();
+            if (boxed == Integer.class) return number.intValue();
+            if (boxed == Double.class) return number.doubleValue();
+            if (boxed == Float.class) return number.floatValue();
+            if (boxed == Short.class) return number.shortValue();
+            if (boxed == Byte.class) return number.byteValue();
+            if (boxed == Boolean.class) return number.intValue() != 0;
+            if (boxed == BigDecimal.class) return new BigDecimal(number.toString());
+            if (boxed == BigInteger.class) return new BigDecimal(number.toString()).toBigInteger();
+        }
+        if (value instanceof java.sql.Date date && boxed == LocalDate.class) {
+            return date.toLocalDate();
+        }
+        if (value instanceof java.sql.Time time && boxed == LocalTime.class) {
+            return time.toLocalTime();
+        }
+        if (value instanceof java.sql.Timestamp timestamp) {
+            if (boxed == LocalDateTime.class) return timestamp.toLocalDateTime();
+            if (boxed == Instant.class) return timestamp.toInstant();
+            if (boxed == LocalDate.class) return timestamp.toLocalDateTime().toLocalDate();
+        }
+        if (value instanceof OffsetDateTime dateTime && boxed == Instant.class) {
+            return dateTime.toInstant();
+        }
+        if (value instanceof String text) {
+            if (boxed == UUID.class) return UUID.fromString(text);
+            if (boxed.isEnum()) return Enum.valueOf((Class<? extends Enum>) boxed, text);
+            if (boxed == Character.class && text.length() == 1) return text.charAt(0);
+        }
+        if (boxed == String.class) {
+            return value.toString();
+        }
+        return value;
+    }
+}
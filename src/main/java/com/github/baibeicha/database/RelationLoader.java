@@ -0,0 +1,136 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.cache.SecondLevelCache;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.lazy.LazyReference;
+import com.github.baibeicha.database.metadata.FieldMapping;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Загрузка связей для одного запроса.
+ * <p>
+ * EAGER связи ManyToOne/OneToOne загружаются отложенно: внешние ключи собираются
+ * со всех строк результата, после чего каждая целевая сущность загружается
+ * пачками запросов по id на том же подключении, а не отдельным запросом на строку.
+ * <p>
+ * Сущности с кешем второго уровня сначала ищутся в нём, из бд загружаются только
+ * отсутствующие, после чего попадают в кеш.
+ * <p>
+ * LAZY связи и коллекции привязываются к сессии {@link #getSession()}, если запрос
+ * выполняется в ней, иначе при обращении берут подключение из пула.
+ */
+final class RelationLoader {
+
+    /**
+     * Максимальное количество id в одном запросе.
+     */
+    static final int BATCH_SIZE = 500;
+
+    private final Database database;
+    private final Session session;
+    private final Map<Class<?>, Map<Object, List<PendingReference>>> pending = new LinkedHashMap<>();
+
+    private record PendingReference(Object owner, FieldMapping field) {
+    }
+
+    RelationLoader(Database database, Session session) {
+        this.database = database;
+        this.session = session;
+    }
+
+    /**
+     * @return сессия, в которой выполняется запрос, или null.
+     */
+    Session getSession() {
+        return session;
+    }
+
+    void defer(Object owner, FieldMapping field, Object foreignKey) {
+        pending.computeIfAbsent(field.getTargetType(), k -> new LinkedHashMap<>())
+                .computeIfAbsent(normalizeKey(foreignKey), k -> new ArrayList<>(1))
+                .add(new PendingReference(owner, field));
+    }
+
+    /**
+     * @return true, если есть отложенные связи для {@link #load(Connection)}.
+     */
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    void load(Connection conn) throws DatabaseException {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<Class<?>, Map<Object, List<PendingReference>>> entry : pending.entrySet()) {
+            Class<?> targetClass = entry.getKey();
+            Map<Object, List<PendingReference>> references = entry.getValue();
+            FieldMapping targetId = database.getMetadata(targetClass).getIdField();
+
+            List<Object> keys = new ArrayList<>(references.keySet());
+            boolean cached = database.isCached(targetClass);
+            if (cached) {
+                keys = loadFromCache(conn, targetClass, keys, references);
+            }
+            boolean populateCache = cached && Database.canPopulateCache(conn);
+            for (int from = 0; from < keys.size(); from += BATCH_SIZE) {
+                List<Object> chunk = keys.subList(from, Math.min(from + BATCH_SIZE, keys.size()));
+                for (Object related : database.queryByIds(conn, session, targetClass, chunk)) {
+                    assign(references.get(normalizeKey(targetId.get(related))), related);
+                    if (populateCache) {
+                        database.putInCache(related);
+                    }
+                }
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * Собрать найденные в кеше второго уровня сущности.
+     * @return ключи, которых нет в кеше.
+     */
+    private List<Object> loadFromCache(Connection conn, Class<?> targetClass, List<Object> keys,
+                                       Map<Object, List<PendingReference>> references) {
+        SecondLevelCache cache = database.getSecondLevelCache();
+        RelationLoader nested = new RelationLoader(database, session);
+        List<Object> missing = new ArrayList<>();
+        for (Object key : keys) {
+            Object[] state = cache.get(targetClass, key);
+            if (state == null) {
+                missing.add(key);
+            } else {
+                assign(references.get(key), database.hydrate(targetClass, state, nested));
+            }
+        }
+        nested.load(conn);
+        return missing;
+    }
+
+    private static void assign(List<PendingReference> owners, Object related) {
+        if (owners == null) {
+            return;
+        }
+        for (PendingReference reference : owners) {
+            FieldMapping field = reference.field();
+            field.set(reference.owner(), field.isLazyReference() ? LazyReference.of(related) : related);
+        }
+    }
+
+    /**
+     * Приводит целочисленные ключи к Long, чтобы INTEGER-колонка внешнего ключа
+     * совпадала с BIGINT-идентификатором целевой сущности и наоборот.
+     */
+    private static Object normalizeKey(Object key) {
+        if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return ((Number) key).longValue();
+        }
+        return key;
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.exception.DatabaseException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Построчное чтение результата запроса для {@link Database#stream}.
+ * <p>
+ * Строки читаются порциями по размеру fetch size: EAGER связи порции загружаются
+ * пачкой на том же подключении, после чего порция отдаётся потребителю.
+ * В памяти одновременно находится не больше одной порции. Если диалект передаёт строки
+ * построчно и занимает подключение ({@link com.github.baibeicha.database.dialect.SqlDialect#streamingLocksConnection()}),
+ * связи загружаются через другое подключение из пула.
+ * <p>
+ * Подключение, statement и курсор освобождаются при закрытии потока
+ * или сразу после чтения последней строки.
+ */
+final class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final Connection conn;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private final RowMapper<T> mapper;
+    private final RelationLoader relations;
+    private final Database database;
+    private final boolean restoreAutoCommit;
+    private final int chunkSize;
+    private final ArrayDeque<T> chunk;
+    private boolean closed;
+
+    private ResultSetSpliterator(Connection conn, PreparedStatement stmt, ResultSet rs, RowMapper<T> mapper,
+                                 RelationLoader relations, Database database, boolean restoreAutoCommit,
+                                 int chunkSize) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.conn = conn;
+        this.stmt = stmt;
+        this.rs = rs;
+        this.mapper = mapper;
+        this.relations = relations;
+        this.database = database;
+        this.restoreAutoCommit = restoreAutoCommit;
+        this.chunkSize = chunkSize;
+        this.chunk = new ArrayDeque<>(chunkSize);
+    }
+
+    /**
+     * Выполнить запрос на подключении. Подключение переходит во владение потока
+     * и закрывается вместе с ним, в том числе при ошибке открытия.
+     */
+    static <T> Stream<T> open(Database database, Connection conn, String sql, Class<T> targetClass,
+                              int fetchSize, Object... params) throws DatabaseException {
+        boolean restoreAutoCommit = false;
+        PreparedStatement stmt = null;
+        try {
+            if (database.getDialect().cursorRequiresTransaction() && conn.getAutoCommit()) {
+                conn.setAutoCommit(false);
+                restoreAutoCommit = true;
+            }
+            stmt = conn.prepareStatement(sql);
+            stmt.setFetchSize(database.getDialect().streamFetchSize(fetchSize));
+            database.setParameters(stmt, params);
+            ResultSet rs = stmt.executeQuery();
+
+            RelationLoader relations = new RelationLoader(database, null);
+            RowMapper<T> mapper = database.bindMapper(targetClass, rs.getMetaData(), relations);
+
+            ResultSetSpliterator<T> spliterator = new ResultSetSpliterator<>(
+                    conn, stmt, rs, mapper, relations,
+                    database.getDialect().streamingLocksConnection() ? database : null, restoreAutoCommit, fetchSize);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+        } catch (SQLException | RuntimeException e) {
+            release(conn, stmt, restoreAutoCommit);
+            throw e instanceof DatabaseException de ? de : new DatabaseException("Error opening stream: " + sql, e);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (chunk.isEmpty() && !fetchChunk()) {
+            return false;
+        }
+        action.accept(chunk.poll());
+        return true;
+    }
+
+    private boolean fetchChunk() {
+        if (closed) {
+            return false;
+        }
+        try {
+            while (chunk.size() < chunkSize && rs.next()) {
+                chunk.add(mapper.mapRow(rs));
+            }
+            boolean exhausted = chunk.size() < chunkSize;
+            if (database != null && relations.hasPending()) {
+                try (Connection relationConn = database.getConnection()) {
+                    relations.load(relationConn);
+                }
+            } else {
+                relations.load(conn);
+            }
+            if (exhausted) {
+                close();
+            }
+            return !chunk.isEmpty();
+        } catch (SQLException | RuntimeException e) {
+            close();
+            throw e instanceof DatabaseException de ? de : new DatabaseException("Error reading stream", e);
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close stream result set: " + e.getMessage());
+        }
+        release(conn, stmt, restoreAutoCommit);
+    }
+
+    private static void release(Connection conn, PreparedStatement stmt, boolean restoreAutoCommit) {
+        try {
+            if (stmt != null) {
+                // statement может вернуться в кеш пула, fetch size не должен перейти к другим запросам
+                stmt.setFetchSize(0);
+                stmt.close();
+            }
+            if (restoreAutoCommit) {
+                conn.commit();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to release stream statement: " + e.getMessage());
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Failed to close stream connection: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,25 +1,45 @@
 package com.github.baibeicha.database;
 
 import com.github.baibeicha.database.annotation.*;
-import com.github.baibeicha.database.context.EntitySnapshot;
 import com.github.baibeicha.database.context.EntityState;
 import com.github.baibeicha.database.context.PersistenceContext;
 import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.exception.OptimisticLockException;
+import com.github.baibeicha.database.lazy.LazyReference;
+import com.github.baibeicha.database.lazy.LazyValue;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.FieldMapping;
+import com.github.baibeicha.database.page.Page;
+import com.github.baibeicha.database.page.PageRequest;
+import com.github.baibeicha.database.page.Slice;
 import com.github.baibeicha.reflection.util.AnnotationUtils;
 
 import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 public class Session implements AutoCloseable {
 
     private final Database db;
     private final Connection connection;
     private final PersistenceContext context;
+    /**
+     * Версии сущностей до сброса: при неудачной фиксации возвращаются, чтобы повтор
+     * транзакции проверял версию, которая осталась в бд.
+     */
+    private final Map<Object, Object> flushedVersions = new IdentityHashMap<>();
     private boolean isTransactionActive = false;
 
     public Session(Database database, Connection connection) {
@@ -37,39 +57,170 @@ public class Session implements AutoCloseable {
         if (!isTransactionActive) throw new IllegalStateException("Transaction not active");
 
         try {
-            for (Map.Entry<Object, EntityState> entry : context.getEntityStates().entrySet()) {
-                if (entry.getValue() == EntityState.NEW) {
-                    Object entity = entry.getKey();
-                    db.executeInsert(connection, entity);
-                    context.manage(entity, db.getIdValue(entity), db);
-                }
+            List<List<Object>> written = flush();
+            connection.commit();
+            flushedVersions.clear();
+            // пока транзакция не завершена, другие потоки могли снова положить в кеши старое состояние
+            for (List<Object> group : written) {
+                db.evictFromCache(group);
             }
+        } catch (Exception e) {
+            restoreVersions();
+            connection.rollback();
+            if (e instanceof OptimisticLockException lockException) {
+                throw lockException;
+            }
+            throw new DatabaseException("Commit failed", e);
+        } finally {
+            connection.setAutoCommit(true);
+            isTransactionActive = false;
+            flushedVersions.clear();
+            context.clear();
+        }
+    }
+
+    private void restoreVersions() {
+        for (Map.Entry<Object, Object> entry : flushedVersions.entrySet()) {
+            db.getMetadata(entry.getKey().getClass()).getVersionField().set(entry.getKey(), entry.getValue());
+        }
+    }
 
-            for (Map.Entry<Object, EntityState> entry : context.getEntityStates().entrySet()) {
-                if (entry.getValue() == EntityState.MANAGED) {
-                    Object entity = entry.getKey();
-                    if (isDirty(entity, context.getSnapshot(entity))) {
-                        db.executeUpdate(connection, entity);
-                        context.manage(entity, db.getIdValue(entity), db);
+    /**
+     * Сброс изменений: операции группируются по типу сущности и виду операции,
+     * каждая группа выполняется одним пакетным запросом. Вставки идут от родительских
+     * таблиц к дочерним, удаления - в обратном порядке. UPDATE пишет только изменённые
+     * колонки, обновления группируются ещё и по набору этих колонок.
+     * @return записанные сущности, сгруппированные по типу.
+     */
+    private List<List<Object>> flush() throws DatabaseException {
+        Map<Class<?>, List<Object>> inserts = new LinkedHashMap<>();
+        Map<UpdateGroup, List<Object>> updates = new LinkedHashMap<>();
+        Map<Class<?>, List<Object>> removals = new LinkedHashMap<>();
+
+        for (Map.Entry<Object, EntityState> entry : context.getEntityStates().entrySet()) {
+            Object entity = entry.getKey();
+            switch (entry.getValue()) {
+                case NEW -> inserts.computeIfAbsent(entity.getClass(), k -> new ArrayList<>()).add(entity);
+                case MANAGED -> {
+                    BitSet dirty = context.getSnapshot(entity).getDirtyColumns(entity, db);
+                    if (dirty != null) {
+                        updates.computeIfAbsent(new UpdateGroup(entity.getClass(), dirty), k -> new ArrayList<>())
+                                .add(entity);
                     }
                 }
+                case REMOVED -> removals.computeIfAbsent(entity.getClass(), k -> new ArrayList<>()).add(entity);
             }
+        }
 
-            for (Map.Entry<Object, EntityState> entry : context.getEntityStates().entrySet()) {
-                if (entry.getValue() == EntityState.REMOVED) {
-                    db.executeDelete(connection, entry.getKey());
+        for (Class<?> clazz : orderByDependencies(inserts.keySet())) {
+            List<Object> entities = inserts.get(clazz);
+            if (isSelfReferencing(clazz)) {
+                for (Object entity : orderSelfReferences(clazz, entities)) {
+                    db.executeInsert(connection, entity);
                 }
+            } else {
+                db.executeInsertBatch(connection, entities);
+            }
+            for (Object entity : entities) {
+                context.manage(entity, db.getIdValue(entity), db);
             }
+        }
 
-            connection.commit();
-        } catch (Exception e) {
-            connection.rollback();
-            throw new DatabaseException("Commit failed", e);
-        } finally {
-            connection.setAutoCommit(true);
-            isTransactionActive = false;
-            context.clear();
+        for (Map.Entry<UpdateGroup, List<Object>> group : updates.entrySet()) {
+            FieldMapping versionField = db.getMetadata(group.getKey().entityClass()).getVersionField();
+            if (versionField != null) {
+                for (Object entity : group.getValue()) {
+                    flushedVersions.put(entity, versionField.get(entity));
+                }
+            }
+            db.executeUpdateBatch(connection, group.getValue(), group.getKey().columns());
+            for (Object entity : group.getValue()) {
+                context.manage(entity, db.getIdValue(entity), db);
+            }
+        }
+
+        List<Class<?>> removalOrder = orderByDependencies(removals.keySet());
+        Collections.reverse(removalOrder);
+        for (Class<?> clazz : removalOrder) {
+            db.executeDeleteBatch(connection, removals.get(clazz));
+        }
+
+        List<List<Object>> written = new ArrayList<>(inserts.values());
+        written.addAll(updates.values());
+        written.addAll(removals.values());
+        return written;
+    }
+
+    private record UpdateGroup(Class<?> entityClass, BitSet columns) {
+    }
+
+    /**
+     * Топологическая сортировка: тип, на который ссылаются связи ManyToOne/OneToOne,
+     * идёт раньше ссылающегося.
+     */
+    private List<Class<?>> orderByDependencies(Set<Class<?>> classes) {
+        List<Class<?>> ordered = new ArrayList<>();
+        Set<Class<?>> visited = new HashSet<>();
+        for (Class<?> clazz : classes) {
+            visitDependencies(clazz, classes, visited, ordered);
+        }
+        return ordered;
+    }
+
+    private void visitDependencies(Class<?> clazz, Set<Class<?>> classes,
+                                   Set<Class<?>> visited, List<Class<?>> ordered) {
+        if (!visited.add(clazz)) {
+            return;
+        }
+        for (FieldMapping relation : db.getMetadata(clazz).getRelationFields()) {
+            Class<?> target = relation.getTargetType();
+            if (target != clazz && classes.contains(target)) {
+                visitDependencies(target, classes, visited, ordered);
+            }
+        }
+        ordered.add(clazz);
+    }
+
+    private boolean isSelfReferencing(Class<?> clazz) {
+        for (FieldMapping relation : db.getMetadata(clazz).getRelationFields()) {
+            if (relation.getTargetType() == clazz) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Порядок вставки для самоссылающейся сущности: новый родитель вставляется раньше
+     * потомка, чтобы его id был известен при вставке потомка.
+     */
+    private List<Object> orderSelfReferences(Class<?> clazz, List<Object> entities) {
+        Set<Object> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+        pending.addAll(entities);
+        List<Object> ordered = new ArrayList<>(entities.size());
+        for (Object entity : entities) {
+            visitSelfReferences(clazz, entity, pending, ordered);
+        }
+        return ordered;
+    }
+
+    private void visitSelfReferences(Class<?> clazz, Object entity, Set<Object> pending, List<Object> ordered) {
+        if (!pending.remove(entity)) {
+            return;
         }
+        for (FieldMapping relation : db.getMetadata(clazz).getRelationFields()) {
+            if (relation.getTargetType() != clazz) {
+                continue;
+            }
+            Object parent = relation.get(entity);
+            if (parent instanceof LazyReference<?> reference) {
+                parent = reference.isLoaded() ? reference.get() : null;
+            }
+            if (parent != null) {
+                visitSelfReferences(clazz, parent, pending, ordered);
+            }
+        }
+        ordered.add(entity);
     }
 
     public void rollback() throws SQLException {
@@ -91,14 +242,103 @@ public class Session implements AutoCloseable {
         } catch (Exception ignored) {
         }
 
-        String tableName = entityClass.getAnnotation(Table.class).name();
-        String idColumnName = db.getIdColumnName(entityClass);
-        String sql = "SELECT * FROM " + tableName + " WHERE " + idColumnName + " = ?";
+        boolean cached = db.isCached(entityClass);
+        if (cached) {
+            Object[] state = db.getSecondLevelCache().get(entityClass, id);
+            if (state != null) {
+                RelationLoader relations = new RelationLoader(db, this);
+                T entity = db.hydrate(entityClass, state, relations);
+                relations.load(connection);
+                context.manage(entity, id, db);
+                return Optional.of(entity);
+            }
+        }
+
+        FetchJoinLoader<T> fetchJoin = db.getFetchJoinLoader(entityClass);
+        List<T> results = fetchJoin == null ?
+                queryForList(db.getSqlTemplates(entityClass).getSelectByIdSql(), entityClass, id) :
+                manage(entityClass, fetchJoin.load(connection, this, id));
+        if (results.size() > 1) {
+            throw new DatabaseException("Query returned more than 1 row");
+        }
+        if (results.isEmpty()) {
+            return Optional.empty();
+        }
+        if (cached && !isTransactionActive) {
+            db.putInCache(results.getFirst());
+        }
+        return Optional.of(results.getFirst());
+    }
+
+    /**
+     * SELECT запрос в рамках сессии: выполняется на подключении сессии, полученные
+     * сущности становятся управляемыми, уже управляемые возвращаются из кеша.
+     * LAZY связи полученных сущностей загружаются через эту сессию.
+     * @param sql SQL запрос.
+     * @param entityClass тип сущности.
+     * @param params параметры для вставки в запрос.
+     * @return список сущностей.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> List<T> queryForList(String sql, Class<T> entityClass, Object... params) throws DatabaseException {
+        return manage(entityClass, db.queryForList(connection, this, sql, entityClass, params));
+    }
+
+    /**
+     * Делает полученные сущности управляемыми, уже управляемые заменяются экземплярами из кеша.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> manage(Class<T> entityClass, List<T> results) throws DatabaseException {
+        if (!db.getMetadata(entityClass).hasId()) {
+            return results;
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            T entity = results.get(i);
+            Object id = db.getIdValue(entity);
+            T cached = (T) context.getFromCache(entityClass, id);
+            if (cached != null) {
+                results.set(i, cached);
+            } else {
+                context.manage(entity, id, db);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Страница сущностей по ключу в рамках сессии, см. {@link Database#slice}.
+     * @param entityClass тип сущности.
+     * @param request запрос страницы.
+     * @return страница и запрос следующей.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> Slice<T> slice(Class<T> entityClass, PageRequest request) throws DatabaseException {
+        KeysetQuery query = new KeysetQuery(db, entityClass, request);
+        return query.toSlice(queryForList(query.getSql(), entityClass, query.getParameters()));
+    }
 
-        Optional<T> result = db.queryForObject(connection, sql, entityClass, id);
+    /**
+     * Страница сущностей по ключу с общим количеством строк в рамках сессии.
+     * @param entityClass тип сущности.
+     * @param request запрос страницы.
+     * @return страница, запрос следующей и количество строк.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> Page<T> page(Class<T> entityClass, PageRequest request) throws DatabaseException {
+        return new Page<>(slice(entityClass, request), db.count(connection, entityClass));
+    }
 
-        result.ifPresent(entity -> context.manage(entity, id, db));
-        return result;
+    /**
+     * Обход всех сущностей страницами в рамках сессии. Полученные сущности
+     * остаются управляемыми, поэтому для обхода больших таблиц без изменений
+     * лучше использовать {@link Database#iterate}.
+     * @param entityClass тип сущности.
+     * @param firstRequest запрос первой страницы.
+     * @return итератор по сущностям.
+     */
+    public <T> Iterator<T> iterate(Class<T> entityClass, PageRequest firstRequest) {
+        return new SliceIterator<>(request -> slice(entityClass, request), firstRequest);
     }
 
     public void persist(Object entity) throws DatabaseException {
@@ -110,6 +350,9 @@ public class Session implements AutoCloseable {
                         || AnnotationUtils.isAnnotated(field, OneToOne.class)) {
                     field.setAccessible(true);
                     Object related = field.get(entity);
+                    if (related instanceof LazyReference<?> reference) {
+                        related = reference.isLoaded() ? reference.get() : null;
+                    }
                     if (related != null) {
                         CascadeType[] cascades = AnnotationUtils.isAnnotated(field, ManyToOne.class) ?
                                 AnnotationUtils.findAnnotation(field, ManyToOne.class).cascade() :
@@ -127,47 +370,97 @@ public class Session implements AutoCloseable {
         context.scheduleForInsertion(entity);
     }
 
-    public void remove(Object entity) {
-        context.scheduleForRemoval(entity);
+    /**
+     * Вставить сущность или обновить существующую строку одним запросом
+     * ({@link Database#upsert(Connection, Object)}) и сделать её управляемой.
+     * Если в сессии уже есть другой экземпляр с тем же id, состояние сущности
+     * копируется в него и возвращается он.
+     * @param entity сущность.
+     * @return управляемый экземпляр, с id при его генерации.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> T merge(T entity) throws DatabaseException {
+        db.upsert(connection, entity);
+        return manageMerged(entity);
     }
 
-    private boolean isDirty(Object entity, EntitySnapshot snapshot) {
-        try {
-            for (Field field : entity.getClass().getDeclaredFields()) {
-                if (AnnotationUtils.isAnnotated(field, Transient.class)
-                        || AnnotationUtils.isAnnotated(field, OneToMany.class)
-                        || AnnotationUtils.isAnnotated(field, ManyToMany.class)) {
-                    continue;
-                }
+    /**
+     * Пакетный {@link #merge(Object)} сущностей одного типа.
+     * @param entities сущности одного типа.
+     * @return управляемые экземпляры в порядке сущностей.
+     * @throws DatabaseException ошибка бд.
+     */
+    public <T> List<T> mergeAll(List<T> entities) throws DatabaseException {
+        db.upsertBatch(connection, entities);
+        List<T> managed = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            managed.add(manageMerged(entity));
+        }
+        return managed;
+    }
 
-                field.setAccessible(true);
-                Object currentValue = field.get(entity);
-                Object snapshotValue = snapshot.getFieldStates().get(field.getName());
+    @SuppressWarnings("unchecked")
+    private <T> T manageMerged(T entity) throws DatabaseException {
+        Object id = db.getIdValue(entity);
+        T managed = (T) context.getFromCache(entity.getClass(), id);
+        if (managed == null) {
+            managed = entity;
+        } else if (managed != entity) {
+            copyState(entity, managed);
+        }
+        // снимок по записанному состоянию, строка в бд теперь ему соответствует
+        context.manage(managed, id, db);
+        return managed;
+    }
 
-                if (AnnotationUtils.isAnnotated(field, ManyToOne.class)
-                        || AnnotationUtils.isAnnotated(field, OneToOne.class)) {
-                    Object currentId = currentValue != null ? db.getIdValue(currentValue) : null;
-                    if (!Objects.equals(currentId, snapshotValue)) {
-                        return true;
-                    }
-                } else {
-                    if (!Objects.equals(currentValue, snapshotValue)) {
-                        return true;
-                    }
-                }
+    /**
+     * Копирует колонки и коллекции сущности в управляемый экземпляр.
+     * Незагруженные ленивые значения не копируются, чтобы не затереть загруженные.
+     */
+    private void copyState(Object source, Object target) throws DatabaseException {
+        EntityMetadata<?> metadata = db.getMetadata(source.getClass());
+        for (FieldMapping field : metadata.getColumnFields()) {
+            Object value = field.get(source);
+            if (!(value instanceof LazyValue<?> lazy && !lazy.isLoaded())) {
+                field.set(target, value);
             }
-            return false;
-        } catch (Exception e) {
-            return true;
         }
+        for (FieldMapping field : metadata.getCollectionFields()) {
+            field.set(target, field.get(source));
+        }
+    }
+
+    public void remove(Object entity) {
+        context.scheduleForRemoval(entity);
+    }
+
+    /**
+     * @return подключение сессии.
+     */
+    Connection getConnection() {
+        return connection;
     }
 
+    /**
+     * Откатывает незавершённую транзакцию и возвращает подключение в пул. Подключение
+     * возвращается и при ошибке отката, но перед этим закрывается как неисправное.
+     */
     @Override
-    public void close() throws Exception {
-        if (isTransactionActive) {
-            rollback();
+    public void close() throws SQLException {
+        if (connection == null) {
+            return;
         }
-        if (connection != null && !connection.isClosed()) {
+        try {
+            rollback();
+        } catch (SQLException e) {
+            // состояние транзакции неизвестно, пул не должен выдать такое подключение снова
+            try {
+                connection.abort(Runnable::run);
+            } catch (SQLException abortError) {
+                e.addSuppressed(abortError);
+            }
+            throw e;
+        } finally {
             connection.close();
         }
     }
@@ -0,0 +1,46 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.page.PageRequest;
+import com.github.baibeicha.database.page.Slice;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * Обход всех строк страницами фиксированного размера: следующая страница
+ * запрашивается, когда закончилась текущая.
+ */
+final class SliceIterator<T> implements Iterator<T> {
+
+    private final Function<PageRequest, Slice<T>> fetch;
+    private Iterator<T> current = Collections.emptyIterator();
+    private PageRequest nextRequest;
+
+    SliceIterator(Function<PageRequest, Slice<T>> fetch, PageRequest firstRequest) {
+        this.fetch = fetch;
+        this.nextRequest = firstRequest;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext()) {
+            if (nextRequest == null) {
+                return false;
+            }
+            Slice<T> slice = fetch.apply(nextRequest);
+            current = slice.getContent().iterator();
+            nextRequest = slice.nextRequest();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+}
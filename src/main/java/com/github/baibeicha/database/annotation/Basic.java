@@ -0,0 +1,17 @@
+package com.github.baibeicha.database.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Способ загрузки простого поля. Поле с {@code fetch = FetchType.LAZY} объявляется как
+ * {@code LazyValue<T>}: его колонка не входит в SELECT сущности и читается при первом
+ * обращении к значению. Подходит для больших TEXT/BYTEA колонок.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Basic {
+    FetchType fetch() default FetchType.EAGER;
+}
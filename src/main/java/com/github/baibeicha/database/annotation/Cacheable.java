@@ -0,0 +1,24 @@
+package com.github.baibeicha.database.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Хранить сущность в кеше второго уровня {@link com.github.baibeicha.database.cache.SecondLevelCache},
+ * общем для всех сессий одного {@link com.github.baibeicha.database.Database}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Cacheable {
+    /**
+     * Максимальное количество сущностей в кеше, при превышении вытесняются давно не читавшиеся.
+     */
+    int maxSize() default 1000;
+
+    /**
+     * Время жизни записи в секундах, 0 - без ограничения.
+     */
+    long ttlSeconds() default 300;
+}
@@ -0,0 +1,18 @@
+package com.github.baibeicha.database.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Версия сущности для оптимистической блокировки. Поле типа int, Integer, long или Long.
+ * <p>
+ * UPDATE и DELETE выполняются с условием на текущую версию, UPDATE увеличивает её на 1.
+ * Если строка не найдена, значит её изменили или удалили параллельно, и бросается
+ * {@link com.github.baibeicha.database.exception.OptimisticLockException}.
+ * Версия новой сущности без значения устанавливается в 0 при вставке.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Version {}
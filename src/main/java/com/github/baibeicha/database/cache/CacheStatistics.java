@@ -0,0 +1,22 @@
+package com.github.baibeicha.database.cache;
+
+/**
+ * Счётчики кеша.
+ *
+ * @param hits количество найденных записей.
+ * @param misses количество промахов, включая просроченные записи.
+ * @param evictions количество записей, вытесненных по размеру.
+ * @param size текущее количество записей.
+ */
+public record CacheStatistics(
+        long hits,
+        long misses,
+        long evictions,
+        int size
+) {
+
+    public CacheStatistics plus(CacheStatistics other) {
+        return new CacheStatistics(hits + other.hits, misses + other.misses,
+                evictions + other.evictions, size + other.size);
+    }
+}
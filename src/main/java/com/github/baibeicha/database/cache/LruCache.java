@@ -0,0 +1,135 @@
+package com.github.baibeicha.database.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Потокобезопасный LRU кеш с ограничением размера и временем жизни записей.
+ * <p>
+ * Порядок доступа хранится в {@link LinkedHashMap}, который меняется и при чтении,
+ * поэтому все операции идут под одной блокировкой. Просроченные записи удаляются при чтении.
+ */
+public final class LruCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize максимальное количество записей.
+     * @param ttlNanos время жизни записи в наносекундах, 0 - без ограничения.
+     */
+    public LruCache(int maxSize, long ttlNanos) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        if (ttlNanos < 0) {
+            throw new IllegalArgumentException("ttl must not be negative: " + ttlNanos);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return значение или null при отсутствии или истечении срока.
+     */
+    public V get(K key) {
+        lock.lock();
+        try {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.expiresAt() >= 0) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        long expiresAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+        lock.lock();
+        try {
+            entries.put(key, new Entry<>(value, expiresAt));
+            if (entries.size() > maxSize) {
+                Iterator<K> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удалить записи, ключи которых подходят под условие.
+     */
+    public void removeIf(Predicate<? super K> condition) {
+        lock.lock();
+        try {
+            entries.keySet().removeIf(condition);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удалить записи, значения которых подходят под условие.
+     */
+    public void removeIfValue(Predicate<? super V> condition) {
+        lock.lock();
+        try {
+            entries.values().removeIf(entry -> condition.test(entry.value()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CacheStatistics getStatistics() {
+        int size;
+        lock.lock();
+        try {
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.baibeicha.database.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кеш результатов SELECT запросов по тексту запроса, параметрам и типу результата.
+ * <p>
+ * Результаты хранятся неизменяемыми списками. Сами объекты в них общие для всех
+ * вызывающих, изменять их нельзя, поэтому кешируются только проекции и скаляры, но не сущности.
+ * Таблицы запроса берутся из его текста. Запись удаляется по ttl, при вытеснении по размеру
+ * и при инвалидации любой таблицы, которую читает запрос.
+ * <p>
+ * Результат, запрошенный до инвалидации, не кешируется, если инвалидация произошла
+ * во время выполнения запроса: для этого перед запросом берётся {@link #version()}.
+ */
+public final class QueryCache {
+
+    private record Key(String sql, List<Object> params, Class<?> resultClass) {
+    }
+
+    private record Result(List<?> rows, Set<String> tables) {
+    }
+
+    private final LruCache<Key, Result> results;
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * @param maxSize максимальное количество кешируемых запросов.
+     * @param ttl время жизни результата, {@link Duration#ZERO} - без ограничения.
+     */
+    public QueryCache(int maxSize, Duration ttl) {
+        this.results = new LruCache<>(maxSize, ttl.toNanos());
+    }
+
+    /**
+     * @return неизменяемый список из кеша или null.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(String sql, Class<T> resultClass, Object... params) {
+        Result result = results.get(new Key(sql, Arrays.asList(params), resultClass));
+        return result == null ? null : (List<T>) result.rows();
+    }
+
+    /**
+     * @return номер текущего состояния кеша, меняется при каждой инвалидации.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Положить результат в кеш, если с {@code version} не было инвалидации.
+     * @param version значение {@link #version()} до выполнения запроса.
+     * @return неизменяемая копия результата.
+     */
+    public <T> List<T> put(String sql, Class<T> resultClass, Object[] params, List<T> rows, long version) {
+        List<T> immutable = Collections.unmodifiableList(new ArrayList<>(rows));
+        Key key = new Key(sql, Arrays.asList(params.clone()), resultClass);
+        Result result = new Result(immutable, SqlTables.of(sql));
+        if (this.version.get() == version) {
+            results.put(key, result);
+            // инвалидация между проверкой и записью
+            if (this.version.get() != version) {
+                results.remove(key);
+            }
+        }
+        return immutable;
+    }
+
+    /**
+     * Удалить результаты запросов, читающих таблицу.
+     * @param table имя таблицы.
+     */
+    public void invalidate(String table) {
+        String normalized = SqlTables.normalize(table);
+        version.incrementAndGet();
+        results.removeIfValue(result -> result.tables().contains(normalized));
+    }
+
+    /**
+     * Удалить результаты запросов, читающих таблицы, которые изменяет {@code sql}.
+     * @param sql изменяющий запрос.
+     */
+    public void invalidateTablesOf(String sql) {
+        Set<String> tables = SqlTables.of(sql);
+        version.incrementAndGet();
+        results.removeIfValue(result -> !Collections.disjoint(result.tables(), tables));
+    }
+
+    public void clear() {
+        version.incrementAndGet();
+        results.clear();
+    }
+
+    public CacheStatistics getStatistics() {
+        return results.getStatistics();
+    }
+}
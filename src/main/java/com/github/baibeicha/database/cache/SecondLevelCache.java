@@ -0,0 +1,101 @@
+package com.github.baibeicha.database.cache;
+
+import com.github.baibeicha.database.annotation.Cacheable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кеш второго уровня: состояние сущностей, общее для всех сессий одной бд.
+ * <p>
+ * Кешируются только сущности с {@link Cacheable}. Хранятся не сами объекты, а значения
+ * колонок (для связей ManyToOne/OneToOne - внешний ключ), из которых каждая сессия
+ * собирает собственный экземпляр, поэтому изменения в одной сессии не видны другим.
+ * Записи удаляются при UPDATE и DELETE сущности через {@code Database}, изменения
+ * произвольным SQL в обход сущностей видны только после истечения ttl.
+ * Кеш заполняется только чтениями вне транзакции.
+ */
+public final class SecondLevelCache {
+
+    private final ClassValue<LruCache<Object, Object[]>> regions = new ClassValue<>() {
+        @Override
+        protected LruCache<Object, Object[]> computeValue(Class<?> type) {
+            Cacheable cacheable = type.getAnnotation(Cacheable.class);
+            if (cacheable == null) {
+                return null;
+            }
+            LruCache<Object, Object[]> region = new LruCache<>(
+                    cacheable.maxSize(), TimeUnit.SECONDS.toNanos(cacheable.ttlSeconds()));
+            createdRegions.put(type, region);
+            return region;
+        }
+    };
+    private final Map<Class<?>, LruCache<Object, Object[]>> createdRegions = new ConcurrentHashMap<>();
+
+    public boolean isCacheable(Class<?> entityClass) {
+        return regions.get(entityClass) != null;
+    }
+
+    /**
+     * @return значения колонок сущности или null.
+     */
+    public Object[] get(Class<?> entityClass, Object id) {
+        LruCache<Object, Object[]> region = regions.get(entityClass);
+        return region == null || id == null ? null : region.get(normalizeKey(id));
+    }
+
+    public void put(Class<?> entityClass, Object id, Object[] state) {
+        LruCache<Object, Object[]> region = regions.get(entityClass);
+        if (region != null && id != null) {
+            region.put(normalizeKey(id), state);
+        }
+    }
+
+    public void evict(Class<?> entityClass, Object id) {
+        LruCache<Object, Object[]> region = regions.get(entityClass);
+        if (region != null && id != null) {
+            region.remove(normalizeKey(id));
+        }
+    }
+
+    public void evictAll(Class<?> entityClass) {
+        LruCache<Object, Object[]> region = regions.get(entityClass);
+        if (region != null) {
+            region.clear();
+        }
+    }
+
+    public void clear() {
+        createdRegions.values().forEach(LruCache::clear);
+    }
+
+    /**
+     * @return счётчики кеша сущности, нулевые для некешируемой.
+     */
+    public CacheStatistics getStatistics(Class<?> entityClass) {
+        LruCache<Object, Object[]> region = regions.get(entityClass);
+        return region == null ? new CacheStatistics(0, 0, 0, 0) : region.getStatistics();
+    }
+
+    /**
+     * @return счётчики по всем кешируемым сущностям.
+     */
+    public CacheStatistics getStatistics() {
+        CacheStatistics total = new CacheStatistics(0, 0, 0, 0);
+        for (LruCache<Object, Object[]> region : createdRegions.values()) {
+            total = total.plus(region.getStatistics());
+        }
+        return total;
+    }
+
+    /**
+     * Приводит целочисленные id к Long, чтобы ключ не зависел от типа колонки.
+     */
+    private static Object normalizeKey(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+}
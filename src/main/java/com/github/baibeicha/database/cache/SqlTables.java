@@ -0,0 +1,137 @@
+package com.github.baibeicha.database.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Определение таблиц, с которыми работает SQL запрос, для инвалидации кеша запросов.
+ * <p>
+ * Таблицами считаются имена после FROM (включая перечисление через запятую), JOIN,
+ * UPDATE и INTO. Строковые литералы и комментарии пропускаются. Имена приводятся
+ * к нижнему регистру без кавычек и схемы, поэтому разбор может найти лишние таблицы,
+ * что приводит только к лишней инвалидации.
+ */
+final class SqlTables {
+
+    private SqlTables() {
+    }
+
+    static Set<String> of(String sql) {
+        List<String> tokens = tokenize(sql);
+        Set<String> tables = new HashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!isKeyword(token, "from") && !isKeyword(token, "join")
+                    && !isKeyword(token, "update") && !isKeyword(token, "into")) {
+                continue;
+            }
+            int next = readTable(tokens, i + 1, tables);
+            while (isKeyword(token, "from") && next > 0) {
+                // FROM a [AS] x, b ...
+                if (next < tokens.size() && isKeyword(tokens.get(next), "as")) {
+                    next++;
+                }
+                if (next < tokens.size() && isIdentifier(tokens.get(next))) {
+                    next++;
+                }
+                if (next >= tokens.size() || !tokens.get(next).equals(",")) {
+                    break;
+                }
+                next = readTable(tokens, next + 1, tables);
+            }
+        }
+        return tables;
+    }
+
+    static String normalize(String name) {
+        int dot = name.lastIndexOf('.');
+        String table = dot < 0 ? name : name.substring(dot + 1);
+        if (table.length() > 1 && (table.charAt(0) == '"' || table.charAt(0) == '`')) {
+            table = table.substring(1, table.length() - 1);
+        }
+        return table.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Прочитать имя таблицы {@code [schema.]table} с позиции.
+     * @return позиция после имени или -1, если там не имя (например, подзапрос).
+     */
+    private static int readTable(List<String> tokens, int from, Set<String> tables) {
+        if (from >= tokens.size() || !isIdentifier(tokens.get(from))) {
+            return -1;
+        }
+        int last = from;
+        while (last + 2 < tokens.size() && tokens.get(last + 1).equals(".") && isIdentifier(tokens.get(last + 2))) {
+            last += 2;
+        }
+        tables.add(normalize(tokens.get(last)));
+        return last + 1;
+    }
+
+    private static boolean isKeyword(String token, String keyword) {
+        return token.equalsIgnoreCase(keyword);
+    }
+
+    private static boolean isIdentifier(String token) {
+        char first = token.charAt(0);
+        return first == '"' || first == '`' || first == '_' || Character.isLetter(first);
+    }
+
+    /**
+     * Разбивает запрос на идентификаторы (в кавычках - вместе с кавычками), числа
+     * и одиночные символы.
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                i = skipLiteral(sql, i);
+            } else if (c == '-' && sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '"' || c == '`') {
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? length : end + 1;
+                tokens.add(sql.substring(i, end));
+                i = end;
+            } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i))
+                        || sql.charAt(i) == '_' || sql.charAt(i) == '$')) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i));
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipLiteral(String sql, int start) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == '\'') {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,17 @@
+package com.github.baibeicha.database.connection;
+
+/**
+ * Как пул синхронизирует выдачу и возврат подключений.
+ */
+public enum AcquireMode {
+    /**
+     * Свободное подключение захватывается через CAS, общая блокировка берётся
+     * только для ожидания, когда свободных подключений нет.
+     */
+    LOCK_FREE,
+    /**
+     * Каждая выдача и возврат выполняются под общей блокировкой пула.
+     * Прежний режим, оставлен для сравнения и как запасной вариант.
+     */
+    LOCKED
+}
@@ -11,11 +11,15 @@ public class ConnectionManager implements AutoCloseable {
     private volatile ConnectionPool connectionPool;
 
     public ConnectionManager(DataSource source, int poolSize) throws SQLException {
+        this(source, ConnectionPoolConfig.ofSize(poolSize));
+    }
+
+    public ConnectionManager(DataSource source, ConnectionPoolConfig config) throws SQLException {
         connectionPool = ConnectionPool.create(
                 source.url(),
                 source.username(),
                 source.password(),
-                poolSize
+                config
         );
     }
 
@@ -28,6 +32,14 @@ public class ConnectionManager implements AutoCloseable {
         }
     }
 
+    public ConnectionPoolStatistics getPoolStatistics() {
+        return connectionPool.getPoolStatistics();
+    }
+
+    public StatementCacheStatistics getStatementCacheStatistics() {
+        return connectionPool.getStatementCacheStatistics();
+    }
+
     public void shutdownPool() throws SQLException {
         if (connectionPool != null) {
             synchronized (ConnectionManager.class) {
@@ -1,88 +1,510 @@
 package com.github.baibeicha.database.connection;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import com.github.baibeicha.database.exception.DatabaseException;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.github.baibeicha.database.connection.PoolEntry.STATE_IDLE;
+import static com.github.baibeicha.database.connection.PoolEntry.STATE_IN_USE;
+import static com.github.baibeicha.database.connection.PoolEntry.STATE_REMOVED;
+import static com.github.baibeicha.database.connection.PoolEntry.STATE_RESERVED;
 
+/**
+ * Пул подключений с ленивым ростом от {@code minIdle} до {@code maxPoolSize}.
+ * <p>
+ * Выдача и возврат не берут общую блокировку: поток сначала пробует через CAS
+ * захватить подключение, которое использовал последним, затем любое свободное
+ * из общего списка. Блокировка нужна только потокам, которые ждут подключение,
+ * и реализована на {@link ReentrantLock}, поэтому виртуальные потоки не закрепляются
+ * за потоком-носителем. Для виртуальных потоков подсказка последнего подключения
+ * не хранится: они короткоживущие, и ThreadLocal только занимал бы память.
+ * <p>
+ * В режиме {@link AcquireMode#LOCKED} выдача и возврат всегда выполняются под блокировкой,
+ * как до перехода на CAS, без подсказки последнего подключения.
+ * <p>
+ * Закрытие сломанных подключений, проверка свободных и пополнение до {@code minIdle}
+ * выполняются фоновым потоком, поэтому возврат подключения в пул не ждёт сети.
+ */
 public final class ConnectionPool implements AutoCloseable {
 
-    private final BlockingQueue<Connection> connectionQueue;
     private final String url;
     private final String user;
     private final String password;
+    private final int minIdle;
+    private final int maxPoolSize;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final long acquireTimeoutNanos;
+    private final int statementCacheSize;
+    private final ValidationMode validationMode;
+    private final int validationTimeoutSeconds;
+    private final boolean lockFree;
+
+    private final CopyOnWriteArrayList<PoolEntry> connections = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<PoolEntry> lastUsed = new ThreadLocal<>();
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger waitingThreads = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    private final ScheduledExecutorService housekeeper;
+
+    private final LongAdder brokenClosed = new LongAdder();
+    private final LongAdder expiredClosed = new LongAdder();
+    private final LongAdder idleClosed = new LongAdder();
+
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LongAdder statementCacheEvictions = new LongAdder();
 
     static ConnectionPool create(String url, String user, String password, int poolSize) throws SQLException {
-        BlockingQueue<Connection> queue = new ArrayBlockingQueue<>(poolSize);
-        for (int i = 0; i < poolSize; i++) {
-            Connection connection = DriverManager.getConnection(url, user, password);
-            queue.add(connection);
+        return create(url, user, password, ConnectionPoolConfig.ofSize(poolSize));
+    }
+
+    static ConnectionPool create(String url, String user, String password, ConnectionPoolConfig config)
+            throws SQLException {
+        ConnectionPool pool = new ConnectionPool(url, user, password, config);
+        try {
+            for (int i = 0; i < config.minIdle(); i++) {
+                PoolEntry connection = pool.openConnection();
+                pool.totalConnections.incrementAndGet();
+                pool.connections.add(connection);
+                connection.markIdle(System.nanoTime());
+                connection.setState(STATE_IDLE);
+            }
+        } catch (SQLException e) {
+            pool.shutdown();
+            throw e;
         }
-        return new ConnectionPool(queue, url, user, password);
+        long period = config.housekeepingPeriod().toNanos();
+        pool.housekeeper.scheduleWithFixedDelay(pool::housekeep, period, period, TimeUnit.NANOSECONDS);
+        return pool;
     }
 
-    private ConnectionPool(BlockingQueue<Connection> connectionQueue, String url, String user, String password) {
-        this.connectionQueue = connectionQueue;
+    private ConnectionPool(String url, String user, String password, ConnectionPoolConfig config) {
         this.url = url;
         this.user = user;
         this.password = password;
+        this.minIdle = config.minIdle();
+        this.maxPoolSize = config.maxPoolSize();
+        this.idleTimeoutNanos = config.idleTimeout().toNanos();
+        this.maxLifetimeNanos = config.maxLifetime().toNanos();
+        this.acquireTimeoutNanos = config.acquireTimeout().toNanos();
+        this.statementCacheSize = config.statementCacheSize();
+        this.validationMode = config.validationMode();
+        this.validationTimeoutSeconds = (int) Math.max(1, config.validationTimeout().toSeconds());
+        this.lockFree = config.acquireMode() == AcquireMode.LOCK_FREE;
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
+    private PoolEntry openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        StatementCache statementCache = statementCacheSize > 0 ?
+                new StatementCache(statementCacheSize,
+                        statementCacheHits, statementCacheMisses, statementCacheEvictions) :
+                null;
+        return new PoolEntry(connection, statementCache);
+    }
+
+    /**
+     * Взять подключение из пула, при необходимости открыв новое.
+     * @return подключение, которое нужно вернуть в пул через {@link Connection#close()}.
+     * @throws InterruptedException если поток прерван во время ожидания.
+     * @throws DatabaseException если подключение не освободилось за {@code acquireTimeout},
+     * пул остановлен или новое подключение не удалось открыть.
+     */
     public Connection getConnection() throws InterruptedException {
-        final Connection originalConnection = connectionQueue.take();
+        long deadline = System.nanoTime() + acquireTimeoutNanos;
+        while (true) {
+            PoolEntry connection = claimOrReserve(deadline);
+            if (connection == null) {
+                connection = openReserved();
+            } else if (isExpired(connection, System.nanoTime())) {
+                retire(connection, expiredClosed);
+                continue;
+            } else if (validationMode == ValidationMode.ON_BORROW && !isValid(connection)) {
+                retire(connection, brokenClosed);
+                continue;
+            }
+            if (lockFree && !Thread.currentThread().isVirtual()) {
+                lastUsed.set(connection);
+            }
+            return new PooledConnection(this, connection);
+        }
+    }
 
-        return (Connection) Proxy.newProxyInstance(
-                Connection.class.getClassLoader(),
-                new Class[]{Connection.class},
-                new ConnectionInvocationHandler(originalConnection)
-        );
+    /**
+     * @return захваченное свободное подключение или null, если зарезервировано место под новое.
+     */
+    private PoolEntry claimOrReserve(long deadline) throws InterruptedException {
+        if (shutdown) {
+            throw new DatabaseException("Connection pool is shut down");
+        }
+        PoolEntry connection;
+        if (lockFree) {
+            connection = claimIdle();
+            if (connection != null) {
+                return connection;
+            }
+            if (reserveSlot()) {
+                return null;
+            }
+        }
+
+        lock.lockInterruptibly();
+        waitingThreads.incrementAndGet();
+        try {
+            while (true) {
+                if (shutdown) {
+                    throw new DatabaseException("Connection pool is shut down");
+                }
+                connection = claimIdle();
+                if (connection != null) {
+                    return connection;
+                }
+                if (reserveSlot()) {
+                    return null;
+                }
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    throw new DatabaseException("Timed out after "
+                            + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos)
+                            + " ms waiting for a connection: " + getPoolStatistics());
+                }
+                available.awaitNanos(remainingNanos);
+            }
+        } finally {
+            waitingThreads.decrementAndGet();
+            lock.unlock();
+        }
     }
 
-    private void releaseConnection(Connection connection) {
+    private PoolEntry claimIdle() {
+        PoolEntry hint = lockFree ? lastUsed.get() : null;
+        if (hint != null && hint.compareAndSetState(STATE_IDLE, STATE_IN_USE)) {
+            return hint;
+        }
+        for (PoolEntry connection : connections) {
+            if (connection.compareAndSetState(STATE_IDLE, STATE_IN_USE)) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    private boolean reserveSlot() {
+        while (true) {
+            int total = totalConnections.get();
+            if (total >= maxPoolSize) {
+                return false;
+            }
+            if (totalConnections.compareAndSet(total, total + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void releaseSlot() {
+        totalConnections.decrementAndGet();
+        signalWaiters();
+    }
+
+    private PoolEntry openReserved() {
+        PoolEntry connection;
         try {
-            if (!connection.isClosed()) {
-                connectionQueue.offer(connection);
-            } else {
-                connection = DriverManager.getConnection(url, user, password);
-                connectionQueue.add(connection);
+            connection = openConnection();
+        } catch (SQLException e) {
+            releaseSlot();
+            throw new DatabaseException("Failed to open a new connection", e);
+        }
+        connection.setState(STATE_IN_USE);
+        connections.add(connection);
+        return connection;
+    }
+
+    /**
+     * Разбудить ожидающий поток, если такие есть. Без ожидающих блокировка не берётся.
+     */
+    private void signalWaiters() {
+        if (waitingThreads.get() > 0) {
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
             }
+        }
+    }
+
+    /**
+     * Вернуть подключение в пул. Вызывается из {@link PooledConnection#close()},
+     * подключение уже переведено в {@link PoolEntry#STATE_RESERVED}.
+     */
+    void releaseConnection(PoolEntry connection) {
+        boolean broken;
+        try {
+            broken = connection.getPhysicalConnection().isClosed();
         } catch (SQLException e) {
-            System.err.println("Failed to check if connection is closed before release: " + e.getMessage());
+            broken = true;
+        }
+
+        long now = System.nanoTime();
+        if (shutdown) {
+            retire(connection, null);
+        } else if (broken) {
+            retire(connection, brokenClosed);
+        } else if (isExpired(connection, now)) {
+            retire(connection, expiredClosed);
+        } else if (lockFree) {
+            connection.markIdle(now);
+            connection.setState(STATE_IDLE);
+            if (shutdown && connection.compareAndSetState(STATE_IDLE, STATE_RESERVED)) {
+                retire(connection, null);
+                return;
+            }
+            signalWaiters();
+        } else {
+            lock.lock();
+            try {
+                connection.markIdle(now);
+                connection.setState(STATE_IDLE);
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            if (shutdown && connection.compareAndSetState(STATE_IDLE, STATE_RESERVED)) {
+                retire(connection, null);
+            }
         }
     }
 
-    public void shutdown() throws SQLException {
-        for (Connection connection : connectionQueue) {
-            connection.close();
+    private boolean isExpired(PoolEntry connection, long now) {
+        return maxLifetimeNanos > 0 && now - connection.getCreatedAt() >= maxLifetimeNanos;
+    }
+
+    private boolean isValid(PoolEntry connection) {
+        try {
+            return connection.getPhysicalConnection().isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
         }
-        connectionQueue.clear();
     }
 
-    @Override
-    public void close() throws Exception {
-        shutdown();
+    /**
+     * Убрать захваченное подключение из пула и закрыть его в фоне.
+     */
+    private void retire(PoolEntry connection, LongAdder counter) {
+        connection.setState(STATE_REMOVED);
+        connections.remove(connection);
+        if (counter != null) {
+            counter.increment();
+        }
+        releaseSlot();
+        closeInBackground(connection);
+        if (!shutdown && countIdle() < minIdle) {
+            runInBackground(this::fillPool);
+        }
     }
 
-    private class ConnectionInvocationHandler implements InvocationHandler {
+    private int countIdle() {
+        int idle = 0;
+        for (PoolEntry connection : connections) {
+            if (connection.getState() == STATE_IDLE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
 
-        private final Connection originalConnection;
+    private void closeInBackground(PoolEntry connection) {
+        if (!runInBackground(() -> closePhysical(connection))) {
+            closePhysical(connection);
+        }
+    }
 
-        public ConnectionInvocationHandler(Connection originalConnection) {
-            this.originalConnection = originalConnection;
+    /**
+     * @return false, если фоновый поток уже остановлен вместе с пулом.
+     */
+    private boolean runInBackground(Runnable task) {
+        try {
+            housekeeper.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
         }
+    }
 
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            if ("close".equals(method.getName())) {
-                releaseConnection(originalConnection);
-                return null;
+    private static void closePhysical(PoolEntry connection) {
+        try {
+            connection.closePhysical();
+        } catch (SQLException e) {
+            System.err.println("Failed to close pooled connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Фоновое обслуживание: закрыть устаревшие и простаивающие подключения,
+     * проверить свободные и пополнить пул до minIdle.
+     */
+    private void housekeep() {
+        try {
+            if (shutdown) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (PoolEntry connection : connections) {
+                if (isExpired(connection, now) && connection.compareAndSetState(STATE_IDLE, STATE_RESERVED)) {
+                    retire(connection, expiredClosed);
+                }
+            }
+            evictIdle(now);
+            if (validationMode == ValidationMode.WHILE_IDLE) {
+                for (PoolEntry connection : connections) {
+                    validateIdle(connection);
+                }
             }
+            fillPool();
+        } catch (RuntimeException e) {
+            System.err.println("Connection pool housekeeping failed: " + e.getMessage());
+        }
+    }
 
-            return method.invoke(originalConnection, args);
+    /**
+     * Закрыть подключения, простаивающие дольше idleTimeout, начиная с самых давних,
+     * не опускаясь ниже minIdle.
+     */
+    private void evictIdle(long now) {
+        if (idleTimeoutNanos == 0) {
+            return;
+        }
+        List<PoolEntry> idle = new ArrayList<>();
+        for (PoolEntry connection : connections) {
+            if (connection.getState() == STATE_IDLE) {
+                idle.add(connection);
+            }
         }
+        idle.sort(Comparator.comparingLong(PoolEntry::getIdleSince));
+
+        int removable = idle.size() - minIdle;
+        for (PoolEntry connection : idle) {
+            if (removable <= 0 || now - connection.getIdleSince() < idleTimeoutNanos) {
+                return;
+            }
+            if (connection.compareAndSetState(STATE_IDLE, STATE_RESERVED)) {
+                retire(connection, idleClosed);
+                removable--;
+            }
+        }
+    }
+
+    /**
+     * Проверить свободное подключение, если его ещё не успели выдать.
+     * На время проверки оно недоступно для выдачи.
+     */
+    private void validateIdle(PoolEntry connection) {
+        if (!connection.compareAndSetState(STATE_IDLE, STATE_RESERVED)) {
+            return;
+        }
+        if (isValid(connection) && !shutdown) {
+            connection.setState(STATE_IDLE);
+            signalWaiters();
+        } else {
+            retire(connection, shutdown ? null : brokenClosed);
+        }
+    }
+
+    /**
+     * Открыть подключения, пока свободных меньше minIdle и пул не заполнен.
+     */
+    private void fillPool() {
+        while (!shutdown && countIdle() < minIdle && reserveSlot()) {
+            PoolEntry connection;
+            try {
+                connection = openConnection();
+            } catch (SQLException e) {
+                releaseSlot();
+                System.err.println("Failed to open a connection for the pool: " + e.getMessage());
+                return;
+            }
+            if (shutdown) {
+                totalConnections.decrementAndGet();
+                closePhysical(connection);
+                return;
+            }
+            connections.add(connection);
+            connection.markIdle(System.nanoTime());
+            connection.setState(STATE_IDLE);
+            signalWaiters();
+        }
+    }
+
+    /**
+     * @return текущее состояние пула и счётчики закрытых пулом подключений.
+     */
+    public ConnectionPoolStatistics getPoolStatistics() {
+        int total = totalConnections.get();
+        int idle = countIdle();
+        return new ConnectionPoolStatistics(
+                total, idle, Math.max(0, total - idle), waitingThreads.get(), maxPoolSize,
+                brokenClosed.sum(), expiredClosed.sum(), idleClosed.sum()
+        );
+    }
+
+    /**
+     * @return счётчики кеша PreparedStatement по всем подключениям пула.
+     */
+    public StatementCacheStatistics getStatementCacheStatistics() {
+        return new StatementCacheStatistics(
+                statementCacheHits.sum(),
+                statementCacheMisses.sum(),
+                statementCacheEvictions.sum()
+        );
+    }
+
+    /**
+     * Остановить фоновое обслуживание и закрыть свободные подключения.
+     * Выданные подключения закрываются при возврате в пул.
+     */
+    public void shutdown() throws SQLException {
+        shutdown = true;
+        lock.lock();
+        try {
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdown();
+        for (PoolEntry connection : connections) {
+            if (connection.compareAndSetState(STATE_IDLE, STATE_REMOVED)) {
+                connections.remove(connection);
+                totalConnections.decrementAndGet();
+                closePhysical(connection);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        shutdown();
     }
 }
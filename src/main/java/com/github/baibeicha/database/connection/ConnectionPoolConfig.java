@@ -0,0 +1,167 @@
+package com.github.baibeicha.database.connection;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Настройки пула подключений.
+ *
+ * @param minIdle количество подключений, открываемых при старте и не закрываемых по простою.
+ * @param maxPoolSize максимальное количество подключений, пул растёт до него по мере спроса.
+ * @param idleTimeout время простоя, после которого лишнее подключение закрывается,
+ *                    {@link Duration#ZERO} - не закрывать.
+ * @param maxLifetime максимальное время жизни подключения, {@link Duration#ZERO} - без ограничения.
+ * @param acquireTimeout сколько ждать свободное подключение, прежде чем бросить исключение.
+ * @param statementCacheSize количество кешируемых PreparedStatement на одно подключение,
+ *                           0 - кеш выключен.
+ * @param validationMode когда проверять подключения.
+ * @param validationTimeout таймаут {@code isValid} при проверке подключения.
+ * @param housekeepingPeriod период фонового обслуживания: закрытие простаивающих
+ *                           и устаревших подключений, проверка и пополнение до minIdle.
+ * @param acquireMode синхронизация выдачи и возврата подключений.
+ */
+public record ConnectionPoolConfig(
+        int minIdle,
+        int maxPoolSize,
+        Duration idleTimeout,
+        Duration maxLifetime,
+        Duration acquireTimeout,
+        int statementCacheSize,
+        ValidationMode validationMode,
+        Duration validationTimeout,
+        Duration housekeepingPeriod,
+        AcquireMode acquireMode
+) {
+
+    public static final int DEFAULT_MIN_IDLE = 1;
+    public static final int DEFAULT_MAX_POOL_SIZE = 10;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    public static final Duration DEFAULT_MAX_LIFETIME = Duration.ofMinutes(30);
+    public static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_VALIDATION_TIMEOUT = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_HOUSEKEEPING_PERIOD = Duration.ofSeconds(30);
+
+    public ConnectionPoolConfig {
+        if (maxPoolSize <= 0) {
+            throw new IllegalArgumentException("maxPoolSize must be positive: " + maxPoolSize);
+        }
+        if (minIdle < 0 || minIdle > maxPoolSize) {
+            throw new IllegalArgumentException("minIdle must be between 0 and maxPoolSize: " + minIdle);
+        }
+        requireNotNegative(idleTimeout, "idleTimeout");
+        requireNotNegative(maxLifetime, "maxLifetime");
+        requireNotNegative(acquireTimeout, "acquireTimeout");
+        if (acquireTimeout.isZero()) {
+            throw new IllegalArgumentException("acquireTimeout must be positive");
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("statementCacheSize must not be negative: " + statementCacheSize);
+        }
+        Objects.requireNonNull(validationMode, "validationMode");
+        requireNotNegative(validationTimeout, "validationTimeout");
+        if (validationTimeout.toSeconds() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("validationTimeout is too large: " + validationTimeout);
+        }
+        requireNotNegative(housekeepingPeriod, "housekeepingPeriod");
+        if (housekeepingPeriod.isZero()) {
+            throw new IllegalArgumentException("housekeepingPeriod must be positive");
+        }
+        Objects.requireNonNull(acquireMode, "acquireMode");
+    }
+
+    private static void requireNotNegative(Duration duration, String name) {
+        Objects.requireNonNull(duration, name);
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException(name + " must not be negative: " + duration);
+        }
+    }
+
+    /**
+     * Настройки по умолчанию с заданным максимальным размером пула.
+     */
+    public static ConnectionPoolConfig ofSize(int maxPoolSize) {
+        return builder()
+                .minIdle(Math.min(DEFAULT_MIN_IDLE, maxPoolSize))
+                .maxPoolSize(maxPoolSize)
+                .build();
+    }
+
+    public static ConnectionPoolConfig defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public final static class Builder {
+
+        private int minIdle = DEFAULT_MIN_IDLE;
+        private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+        private Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        private Duration maxLifetime = DEFAULT_MAX_LIFETIME;
+        private Duration acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+        private int statementCacheSize = 0;
+        private ValidationMode validationMode = ValidationMode.WHILE_IDLE;
+        private Duration validationTimeout = DEFAULT_VALIDATION_TIMEOUT;
+        private Duration housekeepingPeriod = DEFAULT_HOUSEKEEPING_PERIOD;
+        private AcquireMode acquireMode = AcquireMode.LOCK_FREE;
+
+        public Builder minIdle(int minIdle) {
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        public Builder maxPoolSize(int maxPoolSize) {
+            this.maxPoolSize = maxPoolSize;
+            return this;
+        }
+
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Builder maxLifetime(Duration maxLifetime) {
+            this.maxLifetime = maxLifetime;
+            return this;
+        }
+
+        public Builder acquireTimeout(Duration acquireTimeout) {
+            this.acquireTimeout = acquireTimeout;
+            return this;
+        }
+
+        public Builder statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        public Builder validationMode(ValidationMode validationMode) {
+            this.validationMode = validationMode;
+            return this;
+        }
+
+        public Builder validationTimeout(Duration validationTimeout) {
+            this.validationTimeout = validationTimeout;
+            return this;
+        }
+
+        public Builder housekeepingPeriod(Duration housekeepingPeriod) {
+            this.housekeepingPeriod = housekeepingPeriod;
+            return this;
+        }
+
+        public Builder acquireMode(AcquireMode acquireMode) {
+            this.acquireMode = acquireMode;
+            return this;
+        }
+
+        public ConnectionPoolConfig build() {
+            return new ConnectionPoolConfig(
+                    minIdle, maxPoolSize, idleTimeout, maxLifetime, acquireTimeout, statementCacheSize,
+                    validationMode, validationTimeout, housekeepingPeriod, acquireMode
+            );
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.baibeicha.database.connection;
+
+/**
+ * Снимок состояния пула подключений.
+ *
+ * @param total открытые подключения, включая открываемые и проверяемые в данный момент.
+ * @param idle свободные подключения.
+ * @param active выданные подключения.
+ * @param waiting потоки, ожидающие подключение.
+ * @param maxPoolSize максимальный размер пула.
+ * @param brokenClosed закрыто подключений, не прошедших проверку или закрытых драйвером.
+ * @param expiredClosed закрыто подключений по maxLifetime.
+ * @param idleClosed закрыто подключений по idleTimeout.
+ */
+public record ConnectionPoolStatistics(
+        int total,
+        int idle,
+        int active,
+        int waiting,
+        int maxPoolSize,
+        long brokenClosed,
+        long expiredClosed,
+        long idleClosed
+) {
+
+    /**
+     * @return общее количество подключений, закрытых и заменённых пулом.
+     */
+    public long recycled() {
+        return brokenClosed + expiredClosed + idleClosed;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.baibeicha.database.connection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Физическое подключение пула вместе с кешем statement и состоянием.
+ * <p>
+ * Принадлежность подключения определяется полем состояния: пул захватывает свободное
+ * подключение через CAS {@link #STATE_IDLE} -> {@link #STATE_IN_USE} без общей блокировки.
+ * Каждая выдача оборачивается в отдельный {@link PooledConnection}.
+ */
+final class PoolEntry {
+
+    static final int STATE_IDLE = 0;
+    static final int STATE_IN_USE = 1;
+    /**
+     * Временно изъято пулом: возвращается, проверяется или ожидает решения пула.
+     */
+    static final int STATE_RESERVED = 2;
+    static final int STATE_REMOVED = 3;
+
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private final AtomicInteger state = new AtomicInteger(STATE_RESERVED);
+    private final long createdAt = System.nanoTime();
+    private volatile long idleSince;
+
+    PoolEntry(Connection connection, StatementCache statementCache) {
+        this.connection = connection;
+        this.statementCache = statementCache;
+    }
+
+    boolean compareAndSetState(int expected, int newState) {
+        return state.compareAndSet(expected, newState);
+    }
+
+    void setState(int newState) {
+        state.set(newState);
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    /**
+     * Запомнить момент возврата в пул, до перевода в {@link #STATE_IDLE}.
+     */
+    void markIdle(long now) {
+        idleSince = now;
+    }
+
+    long getIdleSince() {
+        return idleSince;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    Connection getPhysicalConnection() {
+        return connection;
+    }
+
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Закрыть физическое подключение вместе с кешем statement.
+     */
+    void closePhysical() throws SQLException {
+        if (statementCache != null) {
+            statementCache.close();
+        }
+        connection.close();
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.baibeicha.database.connection;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU кеш PreparedStatement одного физического подключения.
+ * <p>
+ * Statement забирается из кеша на время использования и возвращается при закрытии,
+ * поэтому два одновременно открытых statement с одним SQL не делят один объект.
+ * Кеш используется только владельцем подключения и не синхронизирован.
+ */
+final class StatementCache {
+
+    /**
+     * Ключ кеша: текст SQL и способ возврата сгенерированных ключей.
+     */
+    record Key(String sql, int autoGeneratedKeys, List<String> columnNames) {
+    }
+
+    private final int maxSize;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final Map<Key, PreparedStatement> statements = new LinkedHashMap<>();
+
+    StatementCache(int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * @return statement из кеша или null при промахе.
+     */
+    PreparedStatement take(Key key) {
+        PreparedStatement statement = statements.remove(key);
+        if (statement != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return statement;
+    }
+
+    /**
+     * Вернуть statement в кеш. При переполнении закрывается самый давно возвращённый.
+     * Перед возвратом сбрасывается всё, что предыдущий владелец мог оставить: параметры,
+     * накопленный пакет (например, если привязка упала между addBatch), открытый результат
+     * и настройки выполнения.
+     */
+    void offer(Key key, PreparedStatement statement) {
+        try {
+            if (statement.isClosed()) {
+                return;
+            }
+            reset(statement);
+        } catch (SQLException e) {
+            closeQuietly(statement);
+            return;
+        }
+
+        PreparedStatement previous = statements.put(key, statement);
+        if (previous != null) {
+            closeQuietly(previous);
+        }
+
+        if (statements.size() > maxSize) {
+            Iterator<PreparedStatement> eldest = statements.values().iterator();
+            closeQuietly(eldest.next());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private static void reset(PreparedStatement statement) throws SQLException {
+        ResultSet resultSet = statement.getResultSet();
+        if (resultSet != null) {
+            resultSet.close();
+        }
+        statement.clearParameters();
+        statement.clearBatch();
+        statement.clearWarnings();
+        statement.setFetchSize(0);
+        statement.setMaxRows(0);
+        statement.setQueryTimeout(0);
+    }
+
+    void close() {
+        for (PreparedStatement statement : statements.values()) {
+            closeQuietly(statement);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.err.println("Failed to close cached statement: " + e.getMessage());
+        }
+    }
+}
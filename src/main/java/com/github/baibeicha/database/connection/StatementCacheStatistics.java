@@ -0,0 +1,15 @@
+package com.github.baibeicha.database.connection;
+
+/**
+ * Счётчики кеша PreparedStatement по всем подключениям пула.
+ *
+ * @param hits запросы, получившие подготовленный ранее statement.
+ * @param misses запросы, для которых statement подготовлен заново.
+ * @param evictions statement, закрытые при вытеснении из кеша.
+ */
+public record StatementCacheStatistics(
+        long hits,
+        long misses,
+        long evictions
+) {
+}
@@ -0,0 +1,19 @@
+package com.github.baibeicha.database.connection;
+
+/**
+ * Когда пул проверяет подключения через {@link java.sql.Connection#isValid(int)}.
+ */
+public enum ValidationMode {
+    /**
+     * Не проверять, сломанные подключения отсеиваются только по {@code isClosed()}.
+     */
+    NONE,
+    /**
+     * Проверять перед каждой выдачей из пула.
+     */
+    ON_BORROW,
+    /**
+     * Проверять свободные подключения в фоновом потоке обслуживания пула.
+     */
+    WHILE_IDLE
+}
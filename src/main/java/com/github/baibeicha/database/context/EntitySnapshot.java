@@ -1,43 +1,98 @@
 package com.github.baibeicha.database.context;
 
 import com.github.baibeicha.database.Database;
-import com.github.baibeicha.database.annotation.ManyToMany;
-import com.github.baibeicha.database.annotation.ManyToOne;
-import com.github.baibeicha.database.annotation.OneToMany;
-import com.github.baibeicha.database.annotation.OneToOne;
-import com.github.baibeicha.database.annotation.Transient;
-import com.github.baibeicha.reflection.util.AnnotationUtils;
+import com.github.baibeicha.database.metadata.FieldMapping;
 
-import java.lang.reflect.Field;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
 
+/**
+ * Состояние колонок управляемой сущности на момент загрузки или последнего сброса.
+ * <p>
+ * Значения хранятся массивами в порядке {@link com.github.baibeicha.database.metadata.EntityMetadata#getColumnFields()}:
+ * поля int, long, double и boolean - в {@code long[]} без упаковки, остальные - в {@code Object[]},
+ * для связей ManyToOne/OneToOne - id связанной сущности.
+ */
 public class EntitySnapshot {
-    private final Map<String, Object> fieldStates = new HashMap<>();
+
+    private final List<FieldMapping> fields;
+    private final Object[] values;
+    private final long[] primitives;
 
     public EntitySnapshot(Object entity, Database db) {
-        try {
-            for (Field field : entity.getClass().getDeclaredFields()) {
-                if (AnnotationUtils.isAnnotated(field, Transient.class) ||
-                        AnnotationUtils.isAnnotated(field, OneToMany.class) ||
-                        AnnotationUtils.isAnnotated(field, ManyToMany.class)) continue;
-
-                field.setAccessible(true);
-                Object value = field.get(entity);
-
-                if (AnnotationUtils.isAnnotated(field, ManyToOne.class)
-                        || AnnotationUtils.isAnnotated(field, OneToOne.class)) {
-                    fieldStates.put(field.getName(), value != null ? db.getIdValue(value) : null);
-                } else {
-                    fieldStates.put(field.getName(), value);
+        this.fields = db.getMetadata(entity.getClass()).getColumnFields();
+        int size = fields.size();
+        Object[] values = null;
+        long[] primitives = null;
+        for (int i = 0; i < size; i++) {
+            FieldMapping field = fields.get(i);
+            if (field.getValueType() == FieldMapping.ValueType.OBJECT) {
+                if (values == null) {
+                    values = new Object[size];
+                }
+                values[i] = objectValue(field, entity, db);
+            } else {
+                if (primitives == null) {
+                    primitives = new long[size];
+                }
+                primitives[i] = primitiveValue(field, entity);
+            }
+        }
+        this.values = values;
+        this.primitives = primitives;
+    }
+
+    /**
+     * @return true, если значение хотя бы одной колонки отличается от снимка.
+     */
+    public boolean isDirty(Object entity, Database db) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (isChanged(i, entity, db)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return индексы изменённых колонок в порядке
+     * {@link com.github.baibeicha.database.metadata.EntityMetadata#getColumnFields()}
+     * или null, если изменений нет.
+     */
+    public BitSet getDirtyColumns(Object entity, Database db) {
+        BitSet dirty = null;
+        for (int i = 0; i < fields.size(); i++) {
+            if (isChanged(i, entity, db)) {
+                if (dirty == null) {
+                    dirty = new BitSet(fields.size());
                 }
+                dirty.set(i);
             }
-        } catch (Exception e) {
-            throw new RuntimeException("Could not create snapshot", e);
         }
+        return dirty;
+    }
+
+    private boolean isChanged(int index, Object entity, Database db) {
+        FieldMapping field = fields.get(index);
+        if (field.getValueType() == FieldMapping.ValueType.OBJECT) {
+            return !Objects.equals(values[index], objectValue(field, entity, db));
+        }
+        return primitives[index] != primitiveValue(field, entity);
+    }
+
+    private static Object objectValue(FieldMapping field, Object entity, Database db) {
+        Object value = field.get(entity);
+        return field.isToOne() ? db.getIdValue(value) : value;
     }
 
-    public Map<String, Object> getFieldStates() {
-        return fieldStates;
+    private static long primitiveValue(FieldMapping field, Object entity) {
+        return switch (field.getValueType()) {
+            case INT -> field.getInt(entity);
+            case LONG -> field.getLong(entity);
+            case DOUBLE -> Double.doubleToLongBits(field.getDouble(entity));
+            case BOOLEAN -> field.getBoolean(entity) ? 1 : 0;
+            case OBJECT -> throw new IllegalArgumentException("Not a primitive field: " + field);
+        };
     }
-}
\ No newline at end of file
+}
@@ -2,21 +2,51 @@ package com.github.baibeicha.database.context;
 
 import com.github.baibeicha.database.Database;
 
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Контекст сессии: загруженные сущности по типу и id, их состояния и снимки.
+ * <p>
+ * Состояния и снимки хранятся по ссылке на объект, поэтому переопределённые
+ * {@code equals}/{@code hashCode} сущности на них не влияют. Сущности типа
+ * хранятся по id объявленного в сущности типа: поиск по id того же типа
+ * не создаёт объектов, целочисленный id другого типа приводится к нему.
+ * Как и сессия, не потокобезопасен.
+ */
 public class PersistenceContext {
 
-    private final Map<String, Object> identityMap = new ConcurrentHashMap<>();
-    private final Map<Object, EntityState> entityStates = new ConcurrentHashMap<>();
-    private final Map<Object, EntitySnapshot> snapshots = new ConcurrentHashMap<>();
+    /**
+     * Управляемые сущности одного типа по id.
+     */
+    private static final class Entities {
+        private final Class<?> idType;
+        private final Map<Object, Object> byId = new HashMap<>();
+
+        private Entities(Class<?> idType) {
+            this.idType = idType.isPrimitive() ? MethodType.methodType(idType).wrap().returnType() : idType;
+        }
+
+        private Object key(Object id) {
+            return id.getClass() == idType ? id : toIdType(id, idType);
+        }
+    }
+
+    private final Map<Class<?>, Entities> identityMap = new HashMap<>();
+    private final Map<Object, EntityState> entityStates = new IdentityHashMap<>();
+    private final Map<Object, EntitySnapshot> snapshots = new IdentityHashMap<>();
 
     public Object getFromCache(Class<?> clazz, Object id) {
-        return identityMap.get(clazz.getName() + ":" + id);
+        Entities entities = identityMap.get(clazz);
+        return entities == null || id == null ? null : entities.byId.get(entities.key(id));
     }
 
     public void manage(Object entity, Object id, Database db) {
-        identityMap.put(entity.getClass().getName() + ":" + id, entity);
+        Entities entities = identityMap.computeIfAbsent(entity.getClass(),
+                clazz -> new Entities(db.getMetadata(clazz).getIdField().getType()));
+        entities.byId.put(entities.key(id), entity);
         entityStates.put(entity, EntityState.MANAGED);
         snapshots.put(entity, new EntitySnapshot(entity, db));
     }
@@ -46,4 +76,28 @@ public class PersistenceContext {
         entityStates.clear();
         snapshots.clear();
     }
-}
\ No newline at end of file
+
+    /**
+     * Приводит целочисленный id к типу id сущности. Значение, которое не помещается
+     * в тип id, и нецелочисленные id возвращаются как есть.
+     */
+    private static Object toIdType(Object id, Class<?> idType) {
+        if (!(id instanceof Long || id instanceof Integer || id instanceof Short || id instanceof Byte)) {
+            return id;
+        }
+        long value = ((Number) id).longValue();
+        if (idType == Long.class) {
+            return value;
+        }
+        if (idType == Integer.class && (int) value == value) {
+            return (int) value;
+        }
+        if (idType == Short.class && (short) value == value) {
+            return (short) value;
+        }
+        if (idType == Byte.class && (byte) value == value) {
+            return (byte) value;
+        }
+        return id;
+    }
+}
@@ -2,6 +2,7 @@ package com.github.baibeicha.database.dialect;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
 
 public class MySqlDialect implements SqlDialect {
     @Override
@@ -29,4 +30,51 @@ public class MySqlDialect implements SqlDialect {
         }
         throw new IllegalArgumentException("MySQL Dialect: Unsupported type " + type.getName());
     }
+
+    /**
+     * Connector/J без {@code useCursorFetch=true} игнорирует положительный fetch size
+     * и читает весь результат в память. {@link Integer#MIN_VALUE} включает построчную
+     * передачу, при которой подключение занято до конца чтения.
+     */
+    @Override
+    public int streamFetchSize(int rows) {
+        return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public boolean streamingLocksConnection() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * {@code INSERT ... ON DUPLICATE KEY UPDATE}. MySQL проверяет все уникальные ключи таблицы,
+     * {@code conflictColumns} определяют только необновляемые колонки. Генерируемый id
+     * присваивается через LAST_INSERT_ID, чтобы он вернулся и для существующей строки.
+     */
+    @Override
+    public String upsert(String table, List<String> columns, List<String> conflictColumns,
+                         String generatedIdColumn) {
+        StringBuilder sql = SqlDialect.insertInto(table, columns).append(" ON DUPLICATE KEY UPDATE ");
+        boolean first = true;
+        if (generatedIdColumn != null) {
+            sql.append(generatedIdColumn).append(" = LAST_INSERT_ID(").append(generatedIdColumn).append(")");
+            first = false;
+        }
+        for (String column : columns) {
+            if (!conflictColumns.contains(column)) {
+                sql.append(first ? "" : ", ").append(column).append(" = VALUES(").append(column).append(")");
+                first = false;
+            }
+        }
+        if (first) {
+            String column = conflictColumns.getFirst();
+            sql.append(column).append(" = ").append(column);
+        }
+        return sql.toString();
+    }
 }
@@ -1,7 +1,16 @@
 package com.github.baibeicha.database.dialect;
 
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 
 public class PostgresDialect implements SqlDialect {
 
@@ -30,4 +39,113 @@ public class PostgresDialect implements SqlDialect {
         }
         throw new IllegalArgumentException("PostgreSQL Dialect: Unsupported type " + type.getName());
     }
+
+    /**
+     * Для однородных id известного типа использует "= ANY(?)" с одним параметром-массивом,
+     * так что текст запроса не зависит от количества значений.
+     */
+    @Override
+    public String inCondition(String column, int size) {
+        return column + " = ANY(?)";
+    }
+
+    @Override
+    public Object[] inParameters(Connection conn, Object[] values) throws SQLException {
+        String elementType = values.length == 0 ? "varchar" : resolveArrayElementType(values[0].getClass());
+        if (elementType == null) {
+            throw new SQLException("PostgreSQL Dialect: Unsupported array element type "
+                    + values[0].getClass().getName());
+        }
+        return new Object[]{conn.createArrayOf(elementType, values)};
+    }
+
+    @Override
+    public boolean supportsInParameters(Class<?> type) {
+        return resolveArrayElementType(type) != null;
+    }
+
+    /**
+     * pgjdbc заключает имена сгенерированных ключей в кавычки, а имена без кавычек в SQL
+     * PostgreSQL приводит к нижнему регистру.
+     */
+    @Override
+    public String generatedKeyColumn(String column) {
+        if (column.length() > 1 && column.startsWith("\"") && column.endsWith("\"")) {
+            return column.substring(1, column.length() - 1);
+        }
+        return column.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public boolean cursorRequiresTransaction() {
+        return true;
+    }
+
+    @Override
+    public String keysetCondition(String column, String idColumn) {
+        return "(" + column + ", " + idColumn + ") > (?, ?)";
+    }
+
+    @Override
+    public Object[] keysetParameters(Object value, Object id) {
+        return new Object[]{value, id};
+    }
+
+    @Override
+    public boolean supportsUpsert() {
+        return true;
+    }
+
+    /**
+     * {@code INSERT ... ON CONFLICT (...) DO UPDATE}. Если обновлять кроме ключа нечего,
+     * ключ присваивается сам себе, чтобы RETURNING вернул и существующую строку.
+     */
+    @Override
+    public String upsert(String table, List<String> columns, List<String> conflictColumns,
+                         String generatedIdColumn) {
+        StringBuilder sql = SqlDialect.insertInto(table, columns)
+                .append(" ON CONFLICT (").append(String.join(", ", conflictColumns)).append(") DO UPDATE SET ");
+        boolean first = true;
+        for (String column : columns) {
+            if (!conflictColumns.contains(column)) {
+                sql.append(first ? "" : ", ").append(column).append(" = EXCLUDED.").append(column);
+                first = false;
+            }
+        }
+        if (first) {
+            String column = conflictColumns.getFirst();
+            sql.append(column).append(" = EXCLUDED.").append(column);
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public boolean supportsCopy() {
+        return true;
+    }
+
+    @Override
+    public long copyIn(Connection conn, String sql, Reader data) throws SQLException {
+        try {
+            return conn.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, data);
+        } catch (IOException e) {
+            throw new SQLException("Failed to stream COPY data", e);
+        }
+    }
+
+    private String resolveArrayElementType(Class<?> type) {
+        if (type == Long.class) {
+            return "bigint";
+        }
+        if (type == Integer.class) {
+            return "integer";
+        }
+        if (type == String.class) {
+            return "varchar";
+        }
+        if (type == UUID.class) {
+            return "uuid";
+        }
+        return null;
+    }
 }
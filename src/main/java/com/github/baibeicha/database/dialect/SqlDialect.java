@@ -1,6 +1,206 @@
 package com.github.baibeicha.database.dialect;
 
+import com.github.baibeicha.database.exception.DatabaseException;
+
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+
 @FunctionalInterface
 public interface SqlDialect {
     String resolveType(Class<?> javaType, int length);
+
+    /**
+     * Условие принадлежности колонки набору значений.
+     * @param column имя колонки.
+     * @param size количество значений.
+     * @return SQL условие с параметрами.
+     */
+    default String inCondition(String column, int size) {
+        return expandedInCondition(column, size);
+    }
+
+    /**
+     * Условие {@code column IN (?, ?, ...)} с параметром на каждое значение.
+     * @param column имя колонки.
+     * @param size количество значений.
+     * @return SQL условие с параметрами.
+     */
+    static String expandedInCondition(String column, int size) {
+        StringBuilder sql = new StringBuilder(column).append(" IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")").toString();
+    }
+
+    /**
+     * Параметры для условия {@link #inCondition(String, int)}.
+     * @param conn подключение к бд.
+     * @param values значения набора.
+     * @return параметры запроса.
+     * @throws SQLException ошибка создания параметров.
+     */
+    default Object[] inParameters(Connection conn, Object[] values) throws SQLException {
+        return values;
+    }
+
+    /**
+     * @param type класс значений набора.
+     * @return true, если {@link #inParameters(Connection, Object[])} принимает значения этого
+     * класса. Иначе условие строится как {@code IN (?, ?, ...)} с параметром на каждое значение.
+     */
+    default boolean supportsInParameters(Class<?> type) {
+        return true;
+    }
+
+    /**
+     * @param values значения набора, не null.
+     * @return true, если значения одного класса и {@link #supportsInParameters(Class)} его принимает.
+     */
+    default boolean supportsInParameters(Object[] values) {
+        if (values.length == 0) {
+            return true;
+        }
+        Class<?> type = values[0].getClass();
+        for (Object value : values) {
+            if (value.getClass() != type) {
+                return false;
+            }
+        }
+        return supportsInParameters(type);
+    }
+
+    /**
+     * Имя колонки для {@link Connection#prepareStatement(String, String[])}: драйвер может
+     * передавать его бд как есть, без приведения регистра, которое бд применяет к именам в SQL.
+     * @param column имя колонки, как оно записано в SQL.
+     * @return имя колонки сгенерированного ключа.
+     */
+    default String generatedKeyColumn(String column) {
+        return column;
+    }
+
+    /**
+     * @return true, если драйвер читает результат курсором по fetch size
+     * только внутри транзакции, то есть с выключенным autocommit.
+     */
+    default boolean cursorRequiresTransaction() {
+        return false;
+    }
+
+    /**
+     * Fetch size построчного чтения результата.
+     * @param rows количество строк, которое можно держать в памяти.
+     * @return значение для {@link java.sql.Statement#setFetchSize(int)}.
+     */
+    default int streamFetchSize(int rows) {
+        return rows;
+    }
+
+    /**
+     * @return true, если пока результат с {@link #streamFetchSize(int)} не дочитан,
+     * на том же подключении нельзя выполнять другие запросы.
+     */
+    default boolean streamingLocksConnection() {
+        return false;
+    }
+
+    /**
+     * Условие keyset пагинации: строка идёт после ({@code value}, {@code id}) в порядке
+     * {@code ORDER BY column, idColumn}.
+     * @param column колонка сортировки.
+     * @param idColumn колонка @Id.
+     * @return SQL условие с параметрами.
+     */
+    default String keysetCondition(String column, String idColumn) {
+        return "(" + column + " > ? OR (" + column + " = ? AND " + idColumn + " > ?))";
+    }
+
+    /**
+     * Параметры для условия {@link #keysetCondition(String, String)}.
+     * @param value значение колонки сортировки последней строки.
+     * @param id значение @Id последней строки.
+     * @return параметры запроса.
+     */
+    default Object[] keysetParameters(Object value, Object id) {
+        return new Object[]{value, value, id};
+    }
+
+    /**
+     * Ограничение количества строк результата.
+     * @param sql SELECT запрос.
+     * @param limit максимальное количество строк.
+     * @return запрос с ограничением.
+     */
+    default String limit(String sql, int limit) {
+        return sql + " LIMIT " + limit;
+    }
+
+    /**
+     * @return true, если диалект строит запрос {@link #upsert}.
+     */
+    default boolean supportsUpsert() {
+        return false;
+    }
+
+    /**
+     * INSERT, который при конфликте по уникальному ключу обновляет существующую строку.
+     * Вызывается только при {@link #supportsUpsert()}.
+     * Параметры запроса - значения {@code columns} по порядку.
+     * @param table таблица.
+     * @param columns вставляемые колонки.
+     * @param conflictColumns колонки уникального ключа, входят в {@code columns}.
+     * @param generatedIdColumn колонка @Id, если она не вставляется и генерируется бд, иначе null.
+     * @return SQL запрос.
+     * @throws DatabaseException диалект не поддерживает upsert.
+     */
+    default String upsert(String table, List<String> columns, List<String> conflictColumns,
+                          String generatedIdColumn) throws DatabaseException {
+        throw new DatabaseException("Upsert is not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Начало INSERT для {@link #upsert}: {@code INSERT INTO table (columns) VALUES (?, ...)}.
+     */
+    static StringBuilder insertInto(String table, List<String> columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (")
+                .append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(")");
+    }
+
+    /**
+     * Ограничение количества строк и смещение параметрами, чтобы текст запроса
+     * не зависел от их значений. Параметры идут в порядке: количество, смещение.
+     * @param sql SELECT запрос.
+     * @param withOffset добавить смещение.
+     * @return запрос с ограничением.
+     */
+    default String limitParameters(String sql, boolean withOffset) {
+        return sql + (withOffset ? " LIMIT ? OFFSET ?" : " LIMIT ?");
+    }
+
+    /**
+     * @return true, если бд поддерживает массовую загрузку через {@link #copyIn}.
+     */
+    default boolean supportsCopy() {
+        return false;
+    }
+
+    /**
+     * Массовая загрузка данных командой COPY ... FROM STDIN.
+     * @param conn подключение к бд.
+     * @param sql команда COPY.
+     * @param data данные в текстовом формате COPY.
+     * @return количество загруженных строк.
+     * @throws SQLException ошибка бд или диалект не поддерживает COPY.
+     */
+    default long copyIn(Connection conn, String sql, Reader data) throws SQLException {
+        throw new SQLFeatureNotSupportedException("COPY is not supported by " + getClass().getSimpleName());
+    }
 }
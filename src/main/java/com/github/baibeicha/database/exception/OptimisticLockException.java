@@ -0,0 +1,25 @@
+package com.github.baibeicha.database.exception;
+
+/**
+ * UPDATE или DELETE сущности с {@link com.github.baibeicha.database.annotation.Version}
+ * не нашёл строку с ожидаемой версией: её изменили или удалили в другой транзакции.
+ */
+public class OptimisticLockException extends DatabaseException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object entity;
+
+    public OptimisticLockException(Object entity, Object id, Object version) {
+        super("Entity " + entity.getClass().getName() + " with id " + id + " and version " + version
+                + " was changed or deleted concurrently");
+        this.entity = entity;
+    }
+
+    /**
+     * @return сущность, изменение которой не удалось.
+     */
+    public Object getEntity() {
+        return entity;
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.baibeicha.database.lazy;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Список для связей OneToMany/ManyToMany, загружаемый при первом обращении.
+ * Изменения списка не сохраняются в бд.
+ */
+public final class LazyList<E> extends AbstractList<E> {
+
+    private LazyLoader<? extends List<E>> loader;
+    private List<E> delegate;
+
+    public LazyList(LazyLoader<? extends List<E>> loader) {
+        this.loader = loader;
+    }
+
+    private List<E> delegate() {
+        if (delegate == null) {
+            delegate = new ArrayList<>(loader.load());
+            loader = null;
+        }
+        return delegate;
+    }
+
+    public boolean isLoaded() {
+        return delegate != null;
+    }
+
+    @Override
+    public E get(int index) {
+        return delegate().get(index);
+    }
+
+    @Override
+    public int size() {
+        return delegate().size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return delegate().set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        delegate().add(index, element);
+    }
+
+    @Override
+    public E remove(int index) {
+        return delegate().remove(index);
+    }
+
+    @Override
+    public String toString() {
+        return isLoaded() ? delegate.toString() : "LazyList<not loaded>";
+    }
+}
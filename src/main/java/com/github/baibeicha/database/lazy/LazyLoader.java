@@ -0,0 +1,8 @@
+package com.github.baibeicha.database.lazy;
+
+import com.github.baibeicha.database.exception.DatabaseException;
+
+@FunctionalInterface
+public interface LazyLoader<Target> {
+    Target load() throws DatabaseException;
+}
@@ -0,0 +1,71 @@
+package com.github.baibeicha.database.lazy;
+
+import com.github.baibeicha.database.exception.DatabaseException;
+
+/**
+ * Ленивая ссылка для связей ManyToOne/OneToOne с {@code fetch = FetchType.LAZY}.
+ * Хранит значение внешнего ключа и загружает сущность при первом вызове {@link #get()}.
+ * <p>
+ * Поле связи объявляется как {@code LazyReference<Target>}; для новой связи
+ * используется {@link #of(Object)}. Не потокобезопасна, как и {@code Session}.
+ */
+public final class LazyReference<T> {
+
+    private final Object id;
+    private LazyLoader<T> loader;
+    private T value;
+
+    private LazyReference(Object id, LazyLoader<T> loader, T value) {
+        this.id = id;
+        this.loader = loader;
+        this.value = value;
+    }
+
+    /**
+     * Уже загруженная ссылка на сущность.
+     * @param value сущность.
+     * @return ссылка.
+     */
+    public static <T> LazyReference<T> of(T value) {
+        return new LazyReference<>(null, null, value);
+    }
+
+    /**
+     * Незагруженная ссылка.
+     * @param id значение внешнего ключа.
+     * @param loader загрузчик сущности.
+     * @return ссылка.
+     */
+    public static <T> LazyReference<T> lazy(Object id, LazyLoader<T> loader) {
+        return new LazyReference<>(id, loader, null);
+    }
+
+    /**
+     * Получить сущность, загрузив её при первом обращении.
+     * @return сущность или null, если она не найдена.
+     * @throws DatabaseException ошибка загрузки.
+     */
+    public T get() throws DatabaseException {
+        if (loader != null) {
+            value = loader.load();
+            loader = null;
+        }
+        return value;
+    }
+
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    /**
+     * @return значение внешнего ключа для незагруженной ссылки, иначе null.
+     */
+    public Object getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return isLoaded() ? "LazyReference<" + value + ">" : "LazyReference<id=" + id + ", not loaded>";
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.baibeicha.database.lazy;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Множество для связей OneToMany/ManyToMany, загружаемое при первом обращении.
+ * Изменения множества не сохраняются в бд.
+ */
+public final class LazySet<E> extends AbstractSet<E> {
+
+    private LazyLoader<? extends List<E>> loader;
+    private Set<E> delegate;
+
+    public LazySet(LazyLoader<? extends List<E>> loader) {
+        this.loader = loader;
+    }
+
+    private Set<E> delegate() {
+        if (delegate == null) {
+            delegate = new LinkedHashSet<>(loader.load());
+            loader = null;
+        }
+        return delegate;
+    }
+
+    public boolean isLoaded() {
+        return delegate != null;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return delegate().iterator();
+    }
+
+    @Override
+    public int size() {
+        return delegate().size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return delegate().contains(o);
+    }
+
+    @Override
+    public boolean add(E e) {
+        return delegate().add(e);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return delegate().remove(o);
+    }
+
+    @Override
+    public String toString() {
+        return isLoaded() ? delegate.toString() : "LazySet<not loaded>";
+    }
+}
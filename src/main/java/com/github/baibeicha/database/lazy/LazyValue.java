@@ -0,0 +1,81 @@
+package com.github.baibeicha.database.lazy;
+
+import com.github.baibeicha.database.exception.DatabaseException;
+
+/**
+ * Ленивое значение колонки для полей с {@code @Basic(fetch = FetchType.LAZY)}.
+ * Загружает значение отдельным запросом при первом вызове {@link #get()}.
+ * <p>
+ * Чтобы изменить значение, полю присваивается новый {@link #of(Object)}: UPDATE пишет
+ * ленивую колонку только для такого значения, а незагруженное или прочитанное из бд
+ * значение не перезаписывается. INSERT и COPY не загружают значение: незагруженное пишется как NULL.
+ * Не потокобезопасно, как и {@code Session}.
+ */
+public final class LazyValue<T> {
+
+    private LazyLoader<T> loader;
+    private T value;
+    private final boolean modified;
+
+    private LazyValue(LazyLoader<T> loader, T value, boolean modified) {
+        this.loader = loader;
+        this.value = value;
+        this.modified = modified;
+    }
+
+    /**
+     * Новое значение колонки, которое записывается при UPDATE.
+     * @param value значение колонки.
+     * @return ленивое значение.
+     */
+    public static <T> LazyValue<T> of(T value) {
+        return new LazyValue<>(null, value, true);
+    }
+
+    /**
+     * Значение, прочитанное из бд: загружено, но при UPDATE не записывается.
+     * @param value значение колонки.
+     * @return ленивое значение.
+     */
+    public static <T> LazyValue<T> loaded(T value) {
+        return new LazyValue<>(null, value, false);
+    }
+
+    /**
+     * Незагруженное значение.
+     * @param loader загрузчик значения колонки.
+     * @return ленивое значение.
+     */
+    public static <T> LazyValue<T> lazy(LazyLoader<T> loader) {
+        return new LazyValue<>(loader, null, false);
+    }
+
+    /**
+     * Получить значение, загрузив его при первом обращении.
+     * @return значение колонки.
+     * @throws DatabaseException ошибка загрузки.
+     */
+    public T get() throws DatabaseException {
+        if (loader != null) {
+            value = loader.load();
+            loader = null;
+        }
+        return value;
+    }
+
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    /**
+     * @return true для значения, созданного через {@link #of(Object)}.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    @Override
+    public String toString() {
+        return isLoaded() ? "LazyValue<" + value + ">" : "LazyValue<not loaded>";
+    }
+}
@@ -0,0 +1,294 @@
+package com.github.baibeicha.database.metadata;
+
+import com.github.baibeicha.database.annotation.Basic;
+import com.github.baibeicha.database.annotation.CascadeType;
+import com.github.baibeicha.database.annotation.Column;
+import com.github.baibeicha.database.annotation.FetchType;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.ManyToMany;
+import com.github.baibeicha.database.annotation.ManyToOne;
+import com.github.baibeicha.database.annotation.OneToMany;
+import com.github.baibeicha.database.annotation.OneToOne;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.annotation.Transient;
+import com.github.baibeicha.database.annotation.Version;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.lazy.LazyValue;
+import com.github.baibeicha.reflection.util.AnnotationUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Метаданные сущности, вычисляемые один раз на класс: таблица, колонки, связи и
+ * аксессоры полей. Заменяет повторный обход полей и поиск аннотаций на каждой строке.
+ */
+public final class EntityMetadata<T> {
+
+    private static final CascadeType[] NO_CASCADES = new CascadeType[0];
+
+    private final Class<T> entityClass;
+    private final String tableName;
+    private final MethodHandle constructor;
+    private final FieldMapping idField;
+    private final FieldMapping versionField;
+    private final List<FieldMapping> uniqueFields;
+    private final List<FieldMapping> columnFields;
+    private final List<FieldMapping> relationFields;
+    private final List<FieldMapping> collectionFields;
+    private final Map<String, FieldMapping> fieldsByName;
+    private final String selectColumns;
+
+    private EntityMetadata(Class<T> entityClass) {
+        this.entityClass = entityClass;
+        this.tableName = resolveTableName(entityClass);
+        this.constructor = resolveConstructor(entityClass);
+
+        FieldMapping id = null;
+        FieldMapping version = null;
+        List<FieldMapping> columns = new ArrayList<>();
+        List<FieldMapping> unique = new ArrayList<>();
+        List<FieldMapping> relations = new ArrayList<>();
+        List<FieldMapping> collections = new ArrayList<>();
+        Map<String, FieldMapping> byName = new HashMap<>();
+
+        for (Field field : entityClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()
+                    || AnnotationUtils.isAnnotated(field, Transient.class)) {
+                continue;
+            }
+
+            FieldMapping mapping = createMapping(field);
+            byName.put(field.getName(), mapping);
+            switch (mapping.getKind()) {
+                case ID -> {
+                    id = mapping;
+                    columns.add(mapping);
+                }
+                case BASIC -> {
+                    columns.add(mapping);
+                    if (AnnotationUtils.isAnnotated(field, Version.class)) {
+                        version = checkVersionType(mapping);
+                    }
+                    if (AnnotationUtils.isAnnotated(field, Column.class)
+                            && AnnotationUtils.findAnnotation(field, Column.class).unique()) {
+                        unique.add(mapping);
+                    }
+                }
+                case MANY_TO_ONE, ONE_TO_ONE -> {
+                    columns.add(mapping);
+                    relations.add(mapping);
+                }
+                case ONE_TO_MANY, MANY_TO_MANY -> collections.add(mapping);
+            }
+        }
+
+        this.idField = id;
+        this.versionField = version;
+        this.uniqueFields = Collections.unmodifiableList(unique);
+        this.columnFields = Collections.unmodifiableList(columns);
+        this.relationFields = Collections.unmodifiableList(relations);
+        this.collectionFields = Collections.unmodifiableList(collections);
+        this.fieldsByName = byName;
+        this.selectColumns = getSelectColumns(null);
+    }
+
+    /**
+     * Построить метаданные для класса. Результат следует кешировать.
+     * @param entityClass класс сущности.
+     * @return метаданные сущности.
+     */
+    public static <T> EntityMetadata<T> of(Class<T> entityClass) {
+        return new EntityMetadata<>(entityClass);
+    }
+
+    /**
+     * Имя таблицы из аннотации @Table или имя класса в нижнем регистре.
+     */
+    public static String resolveTableName(Class<?> clazz) {
+        if (AnnotationUtils.isAnnotated(clazz, Table.class)) {
+            return AnnotationUtils.findAnnotation(clazz, Table.class).name();
+        }
+        return clazz.getSimpleName().toLowerCase();
+    }
+
+    /**
+     * Имя колонки из аннотации @Column или имя поля в нижнем регистре.
+     */
+    public static String resolveColumnName(Field field) {
+        if (AnnotationUtils.isAnnotated(field, Column.class)) {
+            return AnnotationUtils.findAnnotation(field, Column.class).name();
+        }
+        return field.getName().toLowerCase();
+    }
+
+    private static FieldMapping createMapping(Field field) {
+        if (AnnotationUtils.isAnnotated(field, ManyToOne.class)) {
+            ManyToOne m2o = AnnotationUtils.findAnnotation(field, ManyToOne.class);
+            return new FieldMapping(field, FieldMapping.Kind.MANY_TO_ONE,
+                    m2o.joinColumn(), m2o.fetch(), m2o.cascade());
+        }
+        if (AnnotationUtils.isAnnotated(field, OneToOne.class)) {
+            OneToOne o2o = AnnotationUtils.findAnnotation(field, OneToOne.class);
+            return new FieldMapping(field, FieldMapping.Kind.ONE_TO_ONE,
+                    o2o.joinColumn(), o2o.fetch(), o2o.cascade());
+        }
+        if (AnnotationUtils.isAnnotated(field, OneToMany.class)) {
+            return new FieldMapping(field, FieldMapping.Kind.ONE_TO_MANY, null, FetchType.LAZY, NO_CASCADES);
+        }
+        if (AnnotationUtils.isAnnotated(field, ManyToMany.class)) {
+            return new FieldMapping(field, FieldMapping.Kind.MANY_TO_MANY, null, FetchType.LAZY, NO_CASCADES);
+        }
+
+        FieldMapping.Kind kind = AnnotationUtils.isAnnotated(field, Id.class) ?
+                FieldMapping.Kind.ID : FieldMapping.Kind.BASIC;
+        FetchType fetch = AnnotationUtils.isAnnotated(field, Basic.class) ?
+                AnnotationUtils.findAnnotation(field, Basic.class).fetch() : FetchType.EAGER;
+        if ((fetch == FetchType.LAZY) != (field.getType() == LazyValue.class)) {
+            throw new DatabaseException("@Basic(fetch = FetchType.LAZY) field must be declared as LazyValue<T>: " + field);
+        }
+        if (fetch == FetchType.LAZY && kind == FieldMapping.Kind.ID) {
+            throw new DatabaseException("@Id field cannot be lazy: " + field);
+        }
+        return new FieldMapping(field, kind, resolveColumnName(field), fetch, NO_CASCADES);
+    }
+
+    private static FieldMapping checkVersionType(FieldMapping field) {
+        Class<?> type = field.getType();
+        if (type != int.class && type != Integer.class && type != long.class && type != Long.class) {
+            throw new DatabaseException("@Version field must be int, Integer, long or Long: " + field.getField());
+        }
+        return field;
+    }
+
+    private static MethodHandle resolveConstructor(Class<?> clazz) {
+        try {
+            Constructor<?> ctor = clazz.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(ctor)
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Создать пустой экземпляр сущности через конструктор без аргументов.
+     * @return новый экземпляр.
+     * @throws DatabaseException если конструктор отсутствует или выбросил исключение.
+     */
+    public T newInstance() throws DatabaseException {
+        if (constructor == null) {
+            throw new DatabaseException("No accessible no-args constructor in " + entityClass.getName());
+        }
+        try {
+            return entityClass.cast((Object) constructor.invokeExact());
+        } catch (Throwable e) {
+            throw new DatabaseException("Failed to instantiate " + entityClass.getName(), e);
+        }
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public boolean hasId() {
+        return idField != null;
+    }
+
+    /**
+     * @return поле @Id.
+     * @throws DatabaseException если у сущности нет @Id.
+     */
+    public FieldMapping getIdField() throws DatabaseException {
+        if (idField == null) {
+            throw new DatabaseException("Missing @Id on " + entityClass.getName());
+        }
+        return idField;
+    }
+
+    /**
+     * @return поле {@link Version} или null.
+     */
+    public FieldMapping getVersionField() {
+        return versionField;
+    }
+
+    /**
+     * @return простые поля с {@code @Column(unique = true)} в порядке объявления.
+     */
+    public List<FieldMapping> getUniqueFields() {
+        return uniqueFields;
+    }
+
+    /**
+     * @return поля, хранящиеся в колонках таблицы (@Id, простые поля и внешние ключи),
+     * в порядке объявления.
+     */
+    public List<FieldMapping> getColumnFields() {
+        return columnFields;
+    }
+
+    /**
+     * @return список колонок для SELECT сущности через запятую, см. {@link FieldMapping#isSelected()}.
+     */
+    public String getSelectColumns() {
+        return selectColumns;
+    }
+
+    /**
+     * @param alias алиас таблицы или null.
+     * @return список колонок для SELECT сущности с префиксом алиаса.
+     */
+    public String getSelectColumns(String alias) {
+        StringBuilder sql = new StringBuilder();
+        for (FieldMapping field : columnFields) {
+            if (!field.isSelected()) {
+                continue;
+            }
+            if (!sql.isEmpty()) {
+                sql.append(", ");
+            }
+            if (alias != null) {
+                sql.append(alias).append('.');
+            }
+            sql.append(field.getColumnName());
+        }
+        return sql.toString();
+    }
+
+    /**
+     * @return поля связей ManyToOne/OneToOne.
+     */
+    public List<FieldMapping> getRelationFields() {
+        return relationFields;
+    }
+
+    /**
+     * @return поля коллекций OneToMany/ManyToMany.
+     */
+    public List<FieldMapping> getCollectionFields() {
+        return collectionFields;
+    }
+
+    /**
+     * @param name имя поля в классе.
+     * @return описание поля или null, если поле не отображается в бд.
+     */
+    public FieldMapping getField(String name) {
+        return fieldsByName.get(name);
+    }
+}
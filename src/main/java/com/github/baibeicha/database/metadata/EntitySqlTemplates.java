@@ -0,0 +1,347 @@
+package com.github.baibeicha.database.metadata;
+
+import com.github.baibeicha.database.dialect.SqlDialect;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.lazy.LazyValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Готовые SQL запросы CRUD для сущности и порядок полей для их параметров.
+ * Строятся один раз на класс, чтобы не собирать SQL и списки колонок на каждой операции.
+ */
+public final class EntitySqlTemplates {
+
+    /**
+     * Сколько различных наборов колонок частичного UPDATE и upsert кешируется, остальные строятся каждый раз.
+     */
+    private static final int MAX_PARTIAL_UPDATES = 64;
+
+    /**
+     * Запрос и поля его параметров по порядку.
+     */
+    public record ParameterizedSql(String sql, FieldMapping[] fields) {
+    }
+
+    private final String table;
+    private final List<FieldMapping> columnFields;
+    private final FieldMapping idField;
+    private final FieldMapping versionField;
+    private final List<FieldMapping> uniqueFields;
+    private volatile ParameterizedSql upsertById;
+    private volatile ParameterizedSql upsertByUnique;
+    private final Map<BitSet, ParameterizedSql> partialUpdates = new ConcurrentHashMap<>();
+    private final Map<BitSet, ParameterizedSql> partialUpsertsById = new ConcurrentHashMap<>();
+    private final Map<BitSet, ParameterizedSql> partialUpsertsByUnique = new ConcurrentHashMap<>();
+
+    private final String insertSql;
+    private final String updateSql;
+    private final String deleteSql;
+    private final String selectByIdSql;
+    private final FieldMapping[] insertFields;
+    private final FieldMapping[] updateFields;
+    private final String[] generatedKeyColumns;
+    private final int[] lazyColumns;
+    private final BitSet eagerColumns;
+
+    private EntitySqlTemplates(EntityMetadata<?> metadata, SqlDialect dialect) throws DatabaseException {
+        FieldMapping idField = metadata.getIdField();
+        String table = metadata.getTableName();
+        String idColumn = idField.getColumnName();
+        this.table = table;
+        this.columnFields = metadata.getColumnFields();
+        this.idField = idField;
+        this.versionField = metadata.getVersionField();
+        this.uniqueFields = metadata.getUniqueFields();
+
+        List<FieldMapping> columns = new ArrayList<>();
+        for (FieldMapping field : metadata.getColumnFields()) {
+            if (!field.isId()) {
+                columns.add(field);
+            }
+        }
+
+        StringBuilder insert = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        StringBuilder values = new StringBuilder(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            insert.append(i == 0 ? "" : ", ").append(columns.get(i).getColumnName());
+            values.append(i == 0 ? "?" : ", ?");
+        }
+
+        this.insertSql = insert.append(values).append(")").toString();
+        this.deleteSql = "DELETE FROM " + table + " WHERE " + idColumn + " = ?"
+                + (versionField == null ? "" : " AND " + versionField.getColumnName() + " = ?");
+        this.selectByIdSql = "SELECT " + metadata.getSelectColumns() + " FROM " + table + " WHERE " + idColumn + " = ?";
+        this.insertFields = columns.toArray(new FieldMapping[0]);
+        this.generatedKeyColumns = new String[]{dialect.generatedKeyColumn(idColumn)};
+
+        columns.remove(versionField);
+        // ленивые колонки пишутся только частичным UPDATE, когда им присвоено новое значение
+        this.eagerColumns = new BitSet(columnFields.size());
+        List<Integer> lazy = new ArrayList<>();
+        for (int i = 0; i < columnFields.size(); i++) {
+            if (columnFields.get(i).isLazyValue()) {
+                lazy.add(i);
+            } else {
+                eagerColumns.set(i);
+            }
+        }
+        this.lazyColumns = lazy.stream().mapToInt(Integer::intValue).toArray();
+        columns.removeIf(FieldMapping::isLazyValue);
+        ParameterizedSql update = buildUpdate(columns);
+        this.updateSql = update == null ? null : update.sql();
+        this.updateFields = update == null ? null : update.fields();
+    }
+
+    /**
+     * UPDATE заданных колонок по @Id, для сущности с версией - с проверкой и увеличением версии.
+     * @return запрос или null, если колонок нет.
+     */
+    private ParameterizedSql buildUpdate(List<FieldMapping> columns) {
+        if (columns.isEmpty()) {
+            return null;
+        }
+        List<FieldMapping> fields = new ArrayList<>(columns);
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(columns.get(i).getColumnName()).append(" = ?");
+        }
+        if (versionField != null) {
+            String version = versionField.getColumnName();
+            sql.append(", ").append(version).append(" = ").append(version).append(" + 1");
+        }
+        sql.append(" WHERE ").append(idField.getColumnName()).append(" = ?");
+        fields.add(idField);
+        if (versionField != null) {
+            sql.append(" AND ").append(versionField.getColumnName()).append(" = ?");
+            fields.add(versionField);
+        }
+        return new ParameterizedSql(sql.toString(), fields.toArray(new FieldMapping[0]));
+    }
+
+    /**
+     * Построить запросы для сущности. Результат следует кешировать.
+     * @param metadata метаданные сущности.
+     * @param dialect диалект бд, один для всех запросов этого объекта.
+     * @return запросы сущности.
+     * @throws DatabaseException если у сущности нет @Id.
+     */
+    public static EntitySqlTemplates of(EntityMetadata<?> metadata, SqlDialect dialect) throws DatabaseException {
+        return new EntitySqlTemplates(metadata, dialect);
+    }
+
+    public String getInsertSql() {
+        return insertSql;
+    }
+
+    /**
+     * @return UPDATE по @Id без ленивых колонок или null, если кроме @Id обновлять нечего.
+     */
+    public String getUpdateSql() {
+        return updateSql;
+    }
+
+    /**
+     * @return true, если у сущности есть колонки {@code @Basic(fetch = LAZY)}.
+     */
+    public boolean hasLazyColumns() {
+        return lazyColumns.length > 0;
+    }
+
+    /**
+     * Колонки UPDATE сущности с ленивыми полями: все, кроме {@link LazyValue},
+     * которым не присвоено новое значение через {@link LazyValue#of(Object)}.
+     * @param entity сущность этого класса.
+     * @return индексы колонок в порядке {@link EntityMetadata#getColumnFields()} или null,
+     * если ленивых колонок нет и подходит полный UPDATE. Если ленивые значения не изменены,
+     * возвращается общий для класса набор, его нельзя изменять.
+     */
+    public BitSet getUpdateColumns(Object entity) {
+        if (lazyColumns.length == 0) {
+            return null;
+        }
+        BitSet columns = eagerColumns;
+        for (int column : lazyColumns) {
+            if (columnFields.get(column).get(entity) instanceof LazyValue<?> value && value.isModified()) {
+                if (columns == eagerColumns) {
+                    columns = (BitSet) eagerColumns.clone();
+                }
+                columns.set(column);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * UPDATE только изменённых колонок. Запросы кешируются по набору колонок,
+     * поэтому частые варианты изменений используют одни и те же prepared statement.
+     * @param columns индексы колонок в порядке {@link EntityMetadata#getColumnFields()},
+     *                колонки @Id и версии не обновляются.
+     * @return запрос или null, если обновлять нечего. После изменяемых колонок
+     * в параметрах идут @Id и версия.
+     */
+    public ParameterizedSql getPartialUpdate(BitSet columns) {
+        ParameterizedSql update = partialUpdates.get(columns);
+        if (update != null) {
+            return update;
+        }
+        List<FieldMapping> fields = new ArrayList<>();
+        for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+            FieldMapping field = columnFields.get(i);
+            if (!field.isId() && field != versionField) {
+                fields.add(field);
+            }
+        }
+        if (fields.isEmpty()) {
+            return null;
+        }
+        int keyFields = versionField == null ? 1 : 2;
+        boolean full = updateFields != null
+                && fields.equals(Arrays.asList(updateFields).subList(0, updateFields.length - keyFields));
+        update = full ? new ParameterizedSql(updateSql, updateFields) : buildUpdate(fields);
+        if (partialUpdates.size() < MAX_PARTIAL_UPDATES) {
+            partialUpdates.putIfAbsent((BitSet) columns.clone(), update);
+        }
+        return update;
+    }
+
+    /**
+     * Колонки upsert сущности с ленивыми полями: все, кроме незагруженных {@link LazyValue},
+     * значение которых в бд не меняется.
+     * @param entity сущность этого класса.
+     * @return индексы колонок в порядке {@link EntityMetadata#getColumnFields()} или null,
+     * если пишутся все колонки. Если не загружено ни одно ленивое значение, возвращается
+     * общий для класса набор, его нельзя изменять.
+     */
+    public BitSet getUpsertColumns(Object entity) {
+        int loaded = 0;
+        for (int column : lazyColumns) {
+            if (isLoaded(columnFields.get(column).get(entity))) {
+                loaded++;
+            }
+        }
+        if (loaded == lazyColumns.length) {
+            return null;
+        }
+        if (loaded == 0) {
+            return eagerColumns;
+        }
+        BitSet columns = (BitSet) eagerColumns.clone();
+        for (int column : lazyColumns) {
+            if (isLoaded(columnFields.get(column).get(entity))) {
+                columns.set(column);
+            }
+        }
+        return columns;
+    }
+
+    private static boolean isLoaded(Object value) {
+        return !(value instanceof LazyValue<?> lazy) || lazy.isLoaded();
+    }
+
+    /**
+     * INSERT с обновлением существующей строки при конфликте ключа.
+     * @param dialect диалект бд, один для всех запросов этого объекта.
+     * @param byId true - ключ @Id, который вставляется; false - первая колонка с
+     *             {@code @Column(unique = true)}, а @Id генерируется бд.
+     * @param columns индексы колонок в порядке {@link EntityMetadata#getColumnFields()},
+     *                например {@link #getUpsertColumns(Object)}, или null - все колонки.
+     *                Запросы кешируются по набору колонок.
+     * @return запрос и поля его параметров по порядку.
+     * @throws DatabaseException диалект не поддерживает upsert, сущность с версией
+     * или без уникальной колонки при {@code byId = false}.
+     */
+    public ParameterizedSql getUpsert(SqlDialect dialect, boolean byId, BitSet columns) throws DatabaseException {
+        if (columns == null) {
+            ParameterizedSql upsert = byId ? upsertById : upsertByUnique;
+            if (upsert == null) {
+                upsert = buildUpsert(dialect, byId, null);
+                if (byId) {
+                    upsertById = upsert;
+                } else {
+                    upsertByUnique = upsert;
+                }
+            }
+            return upsert;
+        }
+        Map<BitSet, ParameterizedSql> upserts = byId ? partialUpsertsById : partialUpsertsByUnique;
+        ParameterizedSql upsert = upserts.get(columns);
+        if (upsert != null) {
+            return upsert;
+        }
+        upsert = buildUpsert(dialect, byId, columns);
+        if (upserts.size() < MAX_PARTIAL_UPDATES) {
+            upserts.putIfAbsent((BitSet) columns.clone(), upsert);
+        }
+        return upsert;
+    }
+
+    private ParameterizedSql buildUpsert(SqlDialect dialect, boolean byId, BitSet columns) throws DatabaseException {
+        if (!dialect.supportsUpsert()) {
+            throw new DatabaseException("Upsert is not supported by " + dialect.getClass().getSimpleName());
+        }
+        if (versionField != null) {
+            throw new DatabaseException("Upsert is not supported for entities with @Version: " + table);
+        }
+        if (!byId && uniqueFields.isEmpty()) {
+            throw new DatabaseException("Upsert of " + table + " without ID requires a @Column(unique = true) field");
+        }
+
+        List<FieldMapping> fields = new ArrayList<>();
+        if (byId) {
+            fields.add(idField);
+        }
+        for (FieldMapping field : insertFields) {
+            if (columns == null || columns.get(columnFields.indexOf(field))) {
+                fields.add(field);
+            }
+        }
+        List<String> columnNames = fields.stream().map(FieldMapping::getColumnName).toList();
+        List<String> conflictColumns = List.of(byId ? idField.getColumnName() : uniqueFields.getFirst().getColumnName());
+
+        return new ParameterizedSql(
+                dialect.upsert(table, columnNames, conflictColumns, byId ? null : idField.getColumnName()),
+                fields.toArray(new FieldMapping[0]));
+    }
+
+    public String getDeleteSql() {
+        return deleteSql;
+    }
+
+    public String getSelectByIdSql() {
+        return selectByIdSql;
+    }
+
+    /**
+     * @return поля параметров INSERT по порядку.
+     */
+    public FieldMapping[] getInsertFields() {
+        return insertFields;
+    }
+
+    /**
+     * @return поля параметров UPDATE по порядку, после обновляемых колонок идут @Id и версия.
+     */
+    public FieldMapping[] getUpdateFields() {
+        return updateFields;
+    }
+
+    /**
+     * @return поле версии или null. Параметры DELETE: @Id, затем версия.
+     */
+    public FieldMapping getVersionField() {
+        return versionField;
+    }
+
+    /**
+     * @return колонки, возвращаемые как сгенерированные ключи после INSERT.
+     */
+    public String[] getGeneratedKeyColumns() {
+        return generatedKeyColumns;
+    }
+}
@@ -0,0 +1,282 @@
+package com.github.baibeicha.database.metadata;
+
+import com.github.baibeicha.database.annotation.CascadeType;
+import com.github.baibeicha.database.annotation.FetchType;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.lazy.LazyReference;
+import com.github.baibeicha.database.lazy.LazyValue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * Описание одного поля сущности: колонка, тип связи и скомпилированные аксессоры.
+ */
+public final class FieldMapping {
+
+    public enum Kind {
+        ID,
+        BASIC,
+        MANY_TO_ONE,
+        ONE_TO_ONE,
+        ONE_TO_MANY,
+        MANY_TO_MANY
+    }
+
+    public enum ValueType {
+        INT,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        OBJECT
+    }
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final Kind kind;
+    private final String columnName;
+    private final FetchType fetchType;
+    private final CascadeType[] cascades;
+    private final ValueType valueType;
+    private final Class<?> targetType;
+
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    private final MethodHandle primitiveGetter;
+    private final MethodHandle primitiveSetter;
+
+    FieldMapping(Field field, Kind kind, String columnName, FetchType fetchType, CascadeType[] cascades) {
+        this.field = field;
+        this.kind = kind;
+        this.columnName = columnName;
+        this.fetchType = fetchType;
+        this.cascades = cascades;
+        this.valueType = resolveValueType(field.getType());
+        this.targetType = (kind == Kind.ID || kind == Kind.BASIC) && field.getType() != LazyValue.class ?
+                field.getType() : resolveTargetType(field);
+
+        try {
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle rawGetter = lookup.unreflectGetter(field);
+            MethodHandle rawSetter = lookup.unreflectSetter(field);
+            this.getter = rawGetter.asType(GETTER_TYPE);
+            this.setter = rawSetter.asType(SETTER_TYPE);
+            this.primitiveGetter = valueType == ValueType.OBJECT ? null :
+                    rawGetter.asType(MethodType.methodType(field.getType(), Object.class));
+            this.primitiveSetter = valueType == ValueType.OBJECT ? null :
+                    rawSetter.asType(MethodType.methodType(void.class, Object.class, field.getType()));
+        } catch (IllegalAccessException e) {
+            throw new DatabaseException("Cannot access field " + field, e);
+        }
+    }
+
+    private static ValueType resolveValueType(Class<?> type) {
+        if (type == int.class) return ValueType.INT;
+        if (type == long.class) return ValueType.LONG;
+        if (type == double.class) return ValueType.DOUBLE;
+        if (type == boolean.class) return ValueType.BOOLEAN;
+        return ValueType.OBJECT;
+    }
+
+    /**
+     * Тип целевой сущности связи: тип поля, либо параметр типа для
+     * {@code LazyReference<T>}, {@code LazyValue<T>} и коллекций.
+     */
+    private static Class<?> resolveTargetType(Field field) {
+        Class<?> type = field.getType();
+        if (type != LazyReference.class && type != LazyValue.class && !Collection.class.isAssignableFrom(type)) {
+            return type;
+        }
+        if (field.getGenericType() instanceof ParameterizedType parameterized) {
+            Type argument = parameterized.getActualTypeArguments()[0];
+            if (argument instanceof Class<?> argumentClass) {
+                return argumentClass;
+            }
+        }
+        throw new DatabaseException("Cannot resolve target entity type of " + field);
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public String getName() {
+        return field.getName();
+    }
+
+    public Class<?> getType() {
+        return field.getType();
+    }
+
+    /**
+     * @return тип связанной сущности для связей, тип значения для {@code LazyValue<T>}, иначе тип поля.
+     */
+    public Class<?> getTargetType() {
+        return targetType;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return имя колонки, для связей ManyToOne/OneToOne - имя внешнего ключа,
+     * для коллекций - null.
+     */
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public FetchType getFetchType() {
+        return fetchType;
+    }
+
+    public CascadeType[] getCascades() {
+        return cascades;
+    }
+
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    public boolean isId() {
+        return kind == Kind.ID;
+    }
+
+    public boolean isToOne() {
+        return kind == Kind.MANY_TO_ONE || kind == Kind.ONE_TO_ONE;
+    }
+
+    public boolean isLazyReference() {
+        return field.getType() == LazyReference.class;
+    }
+
+    /**
+     * @return true для простых полей с {@code @Basic(fetch = FetchType.LAZY)}.
+     */
+    public boolean isLazyValue() {
+        return field.getType() == LazyValue.class;
+    }
+
+    /**
+     * @return true, если колонка входит в SELECT сущности: кроме ленивых простых полей
+     * и LAZY связей без {@code LazyReference}, которые при чтении не заполняются.
+     */
+    public boolean isSelected() {
+        if (isCollection() || isLazyValue()) {
+            return false;
+        }
+        return !isToOne() || fetchType == FetchType.EAGER || isLazyReference();
+    }
+
+    public boolean isCollection() {
+        return kind == Kind.ONE_TO_MANY || kind == Kind.MANY_TO_MANY;
+    }
+
+    public boolean hasCascade(CascadeType type) {
+        for (CascadeType cascade : cascades) {
+            if (cascade == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Object get(Object entity) {
+        try {
+            return (Object) getter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw accessError("read", e);
+        }
+    }
+
+    public int getInt(Object entity) {
+        try {
+            return (int) primitiveGetter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw accessError("read", e);
+        }
+    }
+
+    public long getLong(Object entity) {
+        try {
+            return (long) primitiveGetter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw accessError("read", e);
+        }
+    }
+
+    public double getDouble(Object entity) {
+        try {
+            return (double) primitiveGetter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw accessError("read", e);
+        }
+    }
+
+    public boolean getBoolean(Object entity) {
+        try {
+            return (boolean) primitiveGetter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw accessError("read", e);
+        }
+    }
+
+    public void set(Object entity, Object value) {
+        try {
+            setter.invokeExact(entity, value);
+        } catch (Throwable e) {
+            throw accessError("write", e);
+        }
+    }
+
+    public void setInt(Object entity, int value) {
+        try {
+            primitiveSetter.invokeExact(entity, value);
+        } catch (Throwable e) {
+            throw accessError("write", e);
+        }
+    }
+
+    public void setLong(Object entity, long value) {
+        try {
+            primitiveSetter.invokeExact(entity, value);
+        } catch (Throwable e) {
+            throw accessError("write", e);
+        }
+    }
+
+    public void setDouble(Object entity, double value) {
+        try {
+            primitiveSetter.invokeExact(entity, value);
+        } catch (Throwable e) {
+            throw accessError("write", e);
+        }
+    }
+
+    public void setBoolean(Object entity, boolean value) {
+        try {
+            primitiveSetter.invokeExact(entity, value);
+        } catch (Throwable e) {
+            throw accessError("write", e);
+        }
+    }
+
+    private DatabaseException accessError(String action, Throwable e) {
+        return new DatabaseException("Failed to " + action + " field "
+                + field.getDeclaringClass().getName() + "." + field.getName(), e);
+    }
+
+    @Override
+    public String toString() {
+        return field.getDeclaringClass().getSimpleName() + "." + field.getName() + " -> " + columnName;
+    }
+}
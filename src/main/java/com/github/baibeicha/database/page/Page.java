@@ -0,0 +1,24 @@
+package com.github.baibeicha.database.page;
+
+/**
+ * {@link Slice} с общим количеством строк. Подсчёт требует отдельного COUNT запроса,
+ * поэтому для обхода больших таблиц лучше использовать {@link Slice}.
+ */
+public class Page<T> extends Slice<T> {
+
+    private final long totalElements;
+
+    public Page(Slice<T> slice, long totalElements) {
+        super(slice.getContent(), slice.getRequest(), slice.nextRequest());
+        this.totalElements = totalElements;
+    }
+
+    public long getTotalElements() {
+        return totalElements;
+    }
+
+    public long getTotalPages() {
+        int size = getRequest().size();
+        return (totalElements + size - 1) / size;
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.baibeicha.database.page;
+
+/**
+ * Запрос страницы по ключу (keyset): строки после последней строки предыдущей страницы
+ * в порядке {@code sortField, @Id}, без OFFSET.
+ * <p>
+ * Колонка сортировки должна быть NOT NULL и индексирована вместе с @Id.
+ *
+ * @param sortField имя поля сортировки, null - сортировка по @Id.
+ * @param afterValue значение поля сортировки последней строки предыдущей страницы,
+ *                   null для первой страницы.
+ * @param afterId @Id последней строки предыдущей страницы, null для первой страницы.
+ * @param size размер страницы.
+ */
+public record PageRequest(
+        String sortField,
+        Object afterValue,
+        Object afterId,
+        int size
+) {
+
+    public PageRequest {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be positive: " + size);
+        }
+    }
+
+    /**
+     * Первая страница по @Id.
+     */
+    public static PageRequest first(int size) {
+        return new PageRequest(null, null, null, size);
+    }
+
+    /**
+     * Первая страница по полю сортировки.
+     */
+    public static PageRequest first(String sortField, int size) {
+        return new PageRequest(sortField, null, null, size);
+    }
+
+    public boolean isFirst() {
+        return afterId == null;
+    }
+
+    /**
+     * @return запрос следующей страницы после строки с указанными значениями.
+     */
+    public PageRequest after(Object value, Object id) {
+        return new PageRequest(sortField, value, id, size);
+    }
+}
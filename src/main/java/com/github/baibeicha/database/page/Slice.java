@@ -0,0 +1,46 @@
+package com.github.baibeicha.database.page;
+
+import java.util.List;
+
+/**
+ * Часть результата постраничного запроса и запрос следующей части.
+ */
+public class Slice<T> {
+
+    private final List<T> content;
+    private final PageRequest request;
+    private final PageRequest nextRequest;
+
+    public Slice(List<T> content, PageRequest request, PageRequest nextRequest) {
+        this.content = List.copyOf(content);
+        this.request = request;
+        this.nextRequest = nextRequest;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public int getSize() {
+        return content.size();
+    }
+
+    public boolean isEmpty() {
+        return content.isEmpty();
+    }
+
+    public PageRequest getRequest() {
+        return request;
+    }
+
+    public boolean hasNext() {
+        return nextRequest != null;
+    }
+
+    /**
+     * @return запрос следующей части или null, если это последняя.
+     */
+    public PageRequest nextRequest() {
+        return nextRequest;
+    }
+}
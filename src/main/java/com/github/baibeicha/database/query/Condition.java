@@ -0,0 +1,168 @@
+package com.github.baibeicha.database.query;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Условие WHERE запроса {@link Query}. Поля задаются путём: {@code "name"} - поле сущности
+ * запроса, {@code "country.name"} - поле присоединённой связи. Значения всегда передаются
+ * параметрами, для связей ManyToOne/OneToOne можно передать саму сущность, сравнивается её id.
+ */
+public abstract class Condition {
+
+    Condition() {
+    }
+
+    abstract void render(SqlRenderer renderer, StringBuilder sql);
+
+    public static Condition eq(String path, Object value) {
+        return value == null ? isNull(path) : new Comparison(path, " = ", value);
+    }
+
+    public static Condition ne(String path, Object value) {
+        return value == null ? isNotNull(path) : new Comparison(path, " <> ", value);
+    }
+
+    public static Condition lt(String path, Object value) {
+        return new Comparison(path, " < ", value);
+    }
+
+    public static Condition le(String path, Object value) {
+        return new Comparison(path, " <= ", value);
+    }
+
+    public static Condition gt(String path, Object value) {
+        return new Comparison(path, " > ", value);
+    }
+
+    public static Condition ge(String path, Object value) {
+        return new Comparison(path, " >= ", value);
+    }
+
+    public static Condition like(String path, String pattern) {
+        return new Comparison(path, " LIKE ", pattern);
+    }
+
+    public static Condition isNull(String path) {
+        return new NullCheck(path, " IS NULL");
+    }
+
+    public static Condition isNotNull(String path) {
+        return new NullCheck(path, " IS NOT NULL");
+    }
+
+    /**
+     * Принадлежность набору значений, условие строится {@link com.github.baibeicha.database.dialect.SqlDialect#inCondition},
+     * поэтому в PostgreSQL текст запроса не зависит от количества значений. Значения других
+     * типов, например дат и BigDecimal, передаются параметром каждое. Перечисления сравниваются
+     * по имени, null в наборе недопустим.
+     */
+    public static Condition in(String path, Collection<?> values) {
+        return new In(path, values.toArray());
+    }
+
+    public static Condition and(Condition... conditions) {
+        return new Junction(" AND ", List.of(conditions));
+    }
+
+    public static Condition or(Condition... conditions) {
+        return new Junction(" OR ", List.of(conditions));
+    }
+
+    public static Condition not(Condition condition) {
+        return new Not(condition);
+    }
+
+    private static final class Comparison extends Condition {
+        private final String path;
+        private final String operator;
+        private final Object value;
+
+        private Comparison(String path, String operator, Object value) {
+            this.path = path;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        void render(SqlRenderer renderer, StringBuilder sql) {
+            sql.append(renderer.column(path)).append(operator).append('?');
+            renderer.addParameter(path, value);
+        }
+    }
+
+    private static final class NullCheck extends Condition {
+        private final String path;
+        private final String check;
+
+        private NullCheck(String path, String check) {
+            this.path = path;
+            this.check = check;
+        }
+
+        @Override
+        void render(SqlRenderer renderer, StringBuilder sql) {
+            sql.append(renderer.column(path)).append(check);
+        }
+    }
+
+    private static final class In extends Condition {
+        private final String path;
+        private final Object[] values;
+
+        private In(String path, Object[] values) {
+            this.path = path;
+            this.values = values;
+        }
+
+        @Override
+        void render(SqlRenderer renderer, StringBuilder sql) {
+            if (values.length == 0) {
+                sql.append("1 = 0");
+                return;
+            }
+            sql.append(renderer.inCondition(path, values));
+        }
+    }
+
+    private static final class Junction extends Condition {
+        private final String operator;
+        private final List<Condition> conditions;
+
+        private Junction(String operator, List<Condition> conditions) {
+            this.operator = operator;
+            this.conditions = conditions;
+        }
+
+        @Override
+        void render(SqlRenderer renderer, StringBuilder sql) {
+            if (conditions.isEmpty()) {
+                sql.append(operator.equals(" AND ") ? "1 = 1" : "1 = 0");
+                return;
+            }
+            sql.append('(');
+            for (int i = 0; i < conditions.size(); i++) {
+                if (i > 0) {
+                    sql.append(operator);
+                }
+                conditions.get(i).render(renderer, sql);
+            }
+            sql.append(')');
+        }
+    }
+
+    private static final class Not extends Condition {
+        private final Condition condition;
+
+        private Not(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        void render(SqlRenderer renderer, StringBuilder sql) {
+            sql.append("NOT (");
+            condition.render(renderer, sql);
+            sql.append(')');
+        }
+    }
+}
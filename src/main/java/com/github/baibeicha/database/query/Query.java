@@ -0,0 +1,262 @@
+package com.github.baibeicha.database.query;
+
+import com.github.baibeicha.database.Database;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.FieldMapping;
+import com.github.baibeicha.reflection.util.AnnotationUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Типизированный SELECT запрос к сущности:
+ * <pre>{@code
+ * List<User> users = db.select(User.class)
+ *         .join("country")
+ *         .where(Condition.eq("country.code", "BY"))
+ *         .where(Condition.gt("age", 18))
+ *         .orderBy("name")
+ *         .limit(20)
+ *         .list();
+ * }</pre>
+ * Значения условий, LIMIT и OFFSET всегда передаются параметрами, поэтому текст запроса
+ * зависит только от его формы и переиспользуется кешем подготовленных запросов и кешем запросов.
+ * Запрос не потокобезопасен, но может выполняться повторно.
+ */
+public final class Query<T> {
+
+    /**
+     * Присоединённая таблица: алиас, метаданные сущности и текст JOIN.
+     */
+    record Join(String alias, EntityMetadata<?> metadata, String sql) {
+    }
+
+    /**
+     * Сортировка по пути к полю.
+     */
+    record Order(String path, boolean ascending) {
+    }
+
+    private static final String ROOT_ALIAS = "t0";
+
+    private final Database database;
+    private final Class<T> entityClass;
+    private final Map<String, Join> joins = new LinkedHashMap<>();
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<Order> orders = new ArrayList<>();
+    private Integer limit;
+    private Long offset;
+
+    public Query(Database database, Class<T> entityClass) {
+        if (!AnnotationUtils.isAnnotated(entityClass, Entity.class)) {
+            throw new DatabaseException("Class is not an entity: " + entityClass.getName());
+        }
+        this.database = database;
+        this.entityClass = entityClass;
+        joins.put("", new Join(ROOT_ALIAS, database.getMetadata(entityClass), null));
+    }
+
+    /**
+     * INNER JOIN связи ManyToOne/OneToOne. Вложенная связь задаётся путём {@code "country.region"},
+     * её родитель должен быть присоединён раньше.
+     * @param relation путь к полю связи.
+     * @return этот запрос.
+     */
+    public Query<T> join(String relation) {
+        return join(relation, "JOIN");
+    }
+
+    /**
+     * LEFT JOIN связи ManyToOne/OneToOne.
+     * @param relation путь к полю связи.
+     * @return этот запрос.
+     * @see #join(String)
+     */
+    public Query<T> leftJoin(String relation) {
+        return join(relation, "LEFT JOIN");
+    }
+
+    private Query<T> join(String relation, String type) {
+        if (joins.containsKey(relation)) {
+            throw new DatabaseException("Relation is already joined: " + relation);
+        }
+        int dot = relation.lastIndexOf('.');
+        String parentPath = dot < 0 ? "" : relation.substring(0, dot);
+        Join parent = joins.get(parentPath);
+        if (parent == null) {
+            throw new DatabaseException("Relation is not joined: " + parentPath);
+        }
+        String name = relation.substring(dot + 1);
+        FieldMapping field = parent.metadata().getField(name);
+        if (field == null || !field.isToOne()) {
+            throw new DatabaseException("Not a ManyToOne/OneToOne relation " + name + " in "
+                    + parent.metadata().getEntityClass().getName());
+        }
+        EntityMetadata<?> target = database.getMetadata(field.getTargetType());
+        String alias = "t" + joins.size();
+        String sql = " " + type + " " + target.getTableName() + " " + alias + " ON " + alias + "."
+                + target.getIdField().getColumnName() + " = " + parent.alias() + "." + field.getColumnName();
+        joins.put(relation, new Join(alias, target, sql));
+        return this;
+    }
+
+    /**
+     * Добавляет условие, условия объединяются через AND.
+     * @param condition условие.
+     * @return этот запрос.
+     */
+    public Query<T> where(Condition condition) {
+        conditions.add(condition);
+        return this;
+    }
+
+    /**
+     * Добавляет условие {@link Condition#eq(String, Object)}.
+     * @param path путь к полю.
+     * @param value значение, null - IS NULL.
+     * @return этот запрос.
+     */
+    public Query<T> where(String path, Object value) {
+        return where(Condition.eq(path, value));
+    }
+
+    public Query<T> orderBy(String path) {
+        orders.add(new Order(path, true));
+        return this;
+    }
+
+    public Query<T> orderByDesc(String path) {
+        orders.add(new Order(path, false));
+        return this;
+    }
+
+    public Query<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit < 0");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    public Query<T> offset(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset < 0");
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * @return текст SELECT запроса.
+     */
+    public String toSql() {
+        return renderSelect(limit).sql();
+    }
+
+    /**
+     * @return сущности, подходящие под условия.
+     * @throws DatabaseException ошибка бд.
+     */
+    public List<T> list() throws DatabaseException {
+        return list(renderSelect(limit));
+    }
+
+    private List<T> list(Rendered rendered) throws DatabaseException {
+        if (!rendered.renderer().needsConnection()) {
+            return database.queryForList(rendered.sql(), entityClass, rendered.renderer().parameters());
+        }
+        try (Connection conn = database.getConnection()) {
+            return list(conn, rendered);
+        } catch (SQLException e) {
+            throw new DatabaseException("Error executing query: " + rendered.sql(), e);
+        }
+    }
+
+    /**
+     * Выполнение в переданном подключении, например внутри транзакции.
+     * @param conn подключение к бд.
+     * @return сущности, подходящие под условия.
+     * @throws DatabaseException ошибка бд.
+     */
+    public List<T> list(Connection conn) throws DatabaseException {
+        return list(conn, renderSelect(limit));
+    }
+
+    private List<T> list(Connection conn, Rendered rendered) throws DatabaseException {
+        try {
+            return database.queryForList(conn, rendered.sql(), entityClass, rendered.renderer().parameters(conn));
+        } catch (SQLException e) {
+            throw new DatabaseException("Error executing query: " + rendered.sql(), e);
+        }
+    }
+
+    /**
+     * @return первая сущность по порядку запроса.
+     * @throws DatabaseException ошибка бд.
+     */
+    public Optional<T> first() throws DatabaseException {
+        List<T> result = list(renderSelect(1));
+        return result.isEmpty() ? Optional.empty() : Optional.of(result.getFirst());
+    }
+
+    /**
+     * @return количество строк, подходящих под условия, без учёта сортировки, LIMIT и OFFSET.
+     * @throws DatabaseException ошибка бд.
+     */
+    public long count() throws DatabaseException {
+        SqlRenderer renderer = new SqlRenderer(database, joins);
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*)");
+        appendFromWhere(renderer, sql);
+        try (Connection conn = database.getConnection()) {
+            return database.queryForObject(conn, sql.toString(), Long.class, renderer.parameters(conn)).orElse(0L);
+        } catch (SQLException e) {
+            throw new DatabaseException("Error executing count: " + sql, e);
+        }
+    }
+
+    private record Rendered(String sql, SqlRenderer renderer) {
+    }
+
+    private Rendered renderSelect(Integer limit) {
+        SqlRenderer renderer = new SqlRenderer(database, joins);
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(joins.get("").metadata().getSelectColumns(ROOT_ALIAS));
+        appendFromWhere(renderer, sql);
+        for (int i = 0; i < orders.size(); i++) {
+            sql.append(i == 0 ? " ORDER BY " : ", ");
+            Order order = orders.get(i);
+            sql.append(renderer.column(order.path()));
+            if (!order.ascending()) {
+                sql.append(" DESC");
+            }
+        }
+        if (limit == null && offset == null) {
+            return new Rendered(sql.toString(), renderer);
+        }
+        renderer.addParameter(limit != null ? (long) limit : Long.MAX_VALUE);
+        if (offset != null) {
+            renderer.addParameter(offset);
+        }
+        return new Rendered(database.getDialect().limitParameters(sql.toString(), offset != null), renderer);
+    }
+
+    private void appendFromWhere(SqlRenderer renderer, StringBuilder sql) {
+        sql.append(" FROM ").append(joins.get("").metadata().getTableName()).append(' ').append(ROOT_ALIAS);
+        for (Join join : joins.values()) {
+            if (join.sql() != null) {
+                sql.append(join.sql());
+            }
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ");
+            conditions.get(i).render(renderer, sql);
+        }
+    }
+}
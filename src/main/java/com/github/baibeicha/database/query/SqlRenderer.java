@@ -0,0 +1,125 @@
+package com.github.baibeicha.database.query;
+
+import com.github.baibeicha.database.Database;
+import com.github.baibeicha.database.dialect.SqlDialect;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.metadata.FieldMapping;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сборка SQL одного запроса {@link Query}: пути полей в колонки с алиасами, значения в параметры.
+ */
+final class SqlRenderer {
+
+    /**
+     * Значения условия IN, превращаются в параметры диалекта при выполнении на подключении.
+     */
+    private record InValues(Object[] values) {
+    }
+
+    private final Database database;
+    private final Map<String, Query.Join> joins;
+    private final List<Object> parameters = new ArrayList<>();
+
+    SqlRenderer(Database database, Map<String, Query.Join> joins) {
+        this.database = database;
+        this.joins = joins;
+    }
+
+    String column(String path) {
+        Query.Join join = joinOf(path);
+        return join.alias() + "." + field(join, path).getColumnName();
+    }
+
+    void addParameter(String path, Object value) {
+        parameters.add(toParameter(field(joinOf(path), path), value));
+    }
+
+    String inCondition(String path, Object[] values) {
+        FieldMapping field = field(joinOf(path), path);
+        Object[] converted = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new DatabaseException("IN values must not contain null: " + path);
+            }
+            converted[i] = toParameter(field, values[i]);
+        }
+        String column = column(path);
+        if (database.getDialect().supportsInParameters(converted)) {
+            parameters.add(new InValues(converted));
+            return database.getDialect().inCondition(column, converted.length);
+        }
+        // типы, которые диалект не передаёт одним параметром, - параметр на каждое значение
+        parameters.addAll(List.of(converted));
+        return SqlDialect.expandedInCondition(column, converted.length);
+    }
+
+    void addParameter(Object value) {
+        parameters.add(value);
+    }
+
+    /**
+     * @return true, если среди параметров есть значения IN и для них нужно подключение.
+     */
+    boolean needsConnection() {
+        for (Object parameter : parameters) {
+            if (parameter instanceof InValues) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return параметры запроса без значений IN.
+     */
+    Object[] parameters() {
+        return parameters.toArray();
+    }
+
+    /**
+     * @return параметры запроса, значения IN приведены к параметрам диалекта.
+     */
+    Object[] parameters(Connection conn) throws SQLException {
+        List<Object> result = new ArrayList<>(parameters.size());
+        for (Object parameter : parameters) {
+            if (parameter instanceof InValues in) {
+                result.addAll(List.of(database.getDialect().inParameters(conn, in.values())));
+            } else {
+                result.add(parameter);
+            }
+        }
+        return result.toArray();
+    }
+
+    private Object toParameter(FieldMapping field, Object value) {
+        if (field.isToOne() && field.getTargetType().isInstance(value)) {
+            return database.getIdValue(value);
+        }
+        return value instanceof Enum<?> constant ? constant.name() : value;
+    }
+
+    private Query.Join joinOf(String path) {
+        int dot = path.lastIndexOf('.');
+        Query.Join join = joins.get(dot < 0 ? "" : path.substring(0, dot));
+        if (join == null) {
+            throw new DatabaseException("Relation is not joined: " + path.substring(0, dot));
+        }
+        return join;
+    }
+
+    private static FieldMapping field(Query.Join join, String path) {
+        String name = path.substring(path.lastIndexOf('.') + 1);
+        FieldMapping field = join.metadata().getField(name);
+        if (field == null || field.isCollection()) {
+            throw new DatabaseException("Unknown column field " + name + " in "
+                    + join.metadata().getEntityClass().getName());
+        }
+        return field;
+    }
+}
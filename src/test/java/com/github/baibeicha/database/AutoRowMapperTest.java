@@ -0,0 +1,127 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Column;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.ManyToOne;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.annotation.Transient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AutoRowMapperTest {
+
+    @Entity
+    @Table(name = "item")
+    static class Item {
+        @Id
+        Long id;
+        @Column(name = "title")
+        String name;
+        int count;
+        long total;
+        double price;
+        boolean active;
+        Boolean flag;
+        LocalDate created;
+        LocalDateTime updated;
+        @Transient
+        String note = "kept";
+    }
+
+    @Entity
+    @Table(name = "line")
+    static class Line {
+        @Id
+        Long id;
+        @ManyToOne(joinColumn = "item_id")
+        Item item;
+    }
+
+    private TestDriver driver;
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        db = new Database(TestDriver.dataSource(), 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void mapsColumnsByLabelIgnoringCase() {
+        driver.onQuery((sql, params) -> List.of(row("ID", 1L, "Title", "a", "COUNT", 3, "total", 4L,
+                "price", 2.5, "active", 1, "flag", true,
+                "created", Date.valueOf("2024-01-02"), "updated", Timestamp.valueOf("2024-01-02 03:04:05"))));
+
+        Item item = db.queryForList("SELECT * FROM item", Item.class).getFirst();
+
+        assertEquals(1L, item.id);
+        assertEquals("a", item.name);
+        assertEquals(3, item.count);
+        assertEquals(4L, item.total);
+        assertEquals(2.5, item.price);
+        assertTrue(item.active);
+        assertEquals(Boolean.TRUE, item.flag);
+        assertEquals(LocalDate.of(2024, 1, 2), item.created);
+        assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4, 5), item.updated);
+        assertEquals("kept", item.note);
+    }
+
+    @Test
+    void nullColumnsKeepFieldDefaults() {
+        driver.onQuery((sql, params) -> List.of(row("id", 1L, "title", null, "count", null, "active", null)));
+
+        Item item = db.queryForList("SELECT * FROM item", Item.class).getFirst();
+
+        assertNull(item.name);
+        assertEquals(0, item.count);
+        assertFalse(item.active);
+        assertNull(item.flag);
+    }
+
+    @Test
+    void boundMapperReadsEveryRowByResolvedIndexes() throws Exception {
+        ResultSet rs = TestDriver.resultSet(null, List.of(row("id", 1L, "title", "a"), row("id", 2L, "title", "b")));
+        RelationLoader relations = new RelationLoader(db, null);
+        RowMapper<Item> mapper = db.bindMapper(Item.class, rs.getMetaData(), relations);
+
+        assertTrue(rs.next());
+        assertEquals("a", mapper.mapRow(rs).name);
+        assertTrue(rs.next());
+        Item second = mapper.mapRow(rs);
+        assertEquals(2L, second.id);
+        assertEquals("b", second.name);
+    }
+
+    @Test
+    void singleRowMappingLoadsEagerRelationsThroughPool() throws Exception {
+        driver.onQuery((sql, params) -> List.of(row("id", 7L, "title", "related")));
+        ResultSet rs = TestDriver.resultSet(null, List.of(row("id", 1L, "item_id", 7L)));
+
+        assertTrue(rs.next());
+        Line line = new AutoRowMapper<>(Line.class, db).mapRow(rs);
+
+        assertEquals("related", line.item.name);
+        assertEquals(1, driver.log("SELECT").size());
+        assertEquals(0, db.getPoolStatistics().active());
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.baibeicha.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BulkInsertTest {
+
+    enum Status { ACTIVE }
+
+    private static String copy(Object value) {
+        StringBuilder buffer = new StringBuilder();
+        BulkInsert.appendCopyValue(buffer, value);
+        return buffer.toString();
+    }
+
+    @Test
+    void nullIsWrittenAsCopyNull() {
+        assertEquals("\\N", copy(null));
+    }
+
+    @Test
+    void stringsEscapeCopyDelimiters() {
+        assertEquals("a\\tb\\nc\\rd\\\\e", copy("a\tb\nc\rd\\e"));
+        assertEquals("", copy(""));
+    }
+
+    @Test
+    void numbersAndBooleans() {
+        assertEquals("42", copy(42));
+        assertEquals("-7", copy(-7L));
+        assertEquals("2.5", copy(2.5));
+        assertEquals("1.0E10", copy(1e10));
+        assertEquals("1000", copy(new BigDecimal("1E+3")));
+        assertEquals("t", copy(true));
+        assertEquals("f", copy(Boolean.FALSE));
+    }
+
+    @Test
+    void enumsUseConstantName() {
+        assertEquals("ACTIVE", copy(Status.ACTIVE));
+    }
+
+    @Test
+    void uuidAndBytes() {
+        UUID uuid = UUID.fromString("123e4567-e89b-12d3-a456-426614174000");
+        assertEquals("123e4567-e89b-12d3-a456-426614174000", copy(uuid));
+        assertEquals("\\\\x00ff10", copy(new byte[]{0, -1, 16}));
+    }
+
+    @Test
+    void javaTimeValuesUseIsoFormat() {
+        assertEquals("2024-01-02", copy(LocalDate.of(2024, 1, 2)));
+        assertEquals("2024-01-02T03:04:05", copy(LocalDateTime.of(2024, 1, 2, 3, 4, 5)));
+        assertEquals("03:04:05", copy(LocalTime.of(3, 4, 5)));
+    }
+
+    @Test
+    void jdbcDateTypesUseIsoFormat() {
+        assertEquals("2024-01-02", copy(java.sql.Date.valueOf("2024-01-02")));
+        assertEquals("03:04:05", copy(Time.valueOf("03:04:05")));
+        assertEquals("2024-01-02T03:04:05.123456789", copy(Timestamp.valueOf("2024-01-02 03:04:05.123456789")));
+        assertEquals("2024-01-02T03:04", copy(Timestamp.valueOf("2024-01-02 03:04:00")));
+    }
+
+    @Test
+    void utilDateUsesLocalTimeOfJvmZone() {
+        LocalDateTime local = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+        java.util.Date date = java.util.Date.from(local.atZone(ZoneId.systemDefault()).toInstant());
+
+        assertEquals("2024-01-02T03:04:05", copy(date));
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Column;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.ManyToOne;
+import com.github.baibeicha.database.annotation.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FetchJoinLoaderTest {
+
+    @Entity
+    @Table(name = "country_with_a_rather_long_table_name")
+    static class Country {
+        @Id
+        Long id;
+        @Column(name = "official_country_name_as_registered_with_the_united_nations")
+        String name;
+    }
+
+    @Entity
+    @Table(name = "person")
+    static class Person {
+        @Id
+        Long id;
+        String name;
+        @ManyToOne(joinColumn = "country_id")
+        Country country;
+    }
+
+    private TestDriver driver;
+    private Database db;
+    private Session session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        db = new Database(TestDriver.dataSource(), 1);
+        session = db.getSession();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        session.close();
+        db.close();
+    }
+
+    @Test
+    void columnsUsePositionalAliases() {
+        session.findById(Person.class, 1L);
+
+        assertEquals(List.of("SELECT t0.id AS c0, t0.name AS c1, t1.id AS c2,"
+                + " t1.official_country_name_as_registered_with_the_united_nations AS c3"
+                + " FROM person t0 LEFT JOIN country_with_a_rather_long_table_name t1 ON t1.id = t0.country_id"
+                + " WHERE t0.id = ? [1]"), driver.log("SELECT"));
+    }
+
+    @Test
+    void rowIsMappedByPosition() {
+        driver.onQuery((sql, params) -> List.of(row("c0", 1L, "c1", "Ann", "c2", 7L, "c3", "Belarus")));
+
+        Person person = session.findById(Person.class, 1L).orElseThrow();
+
+        assertEquals("Ann", person.name);
+        assertEquals(7L, person.country.id);
+        assertEquals("Belarus", person.country.name);
+        assertEquals(1, driver.log("SELECT").size());
+    }
+
+    @Test
+    void missingJoinedRowLeavesRelationNull() {
+        driver.onQuery((sql, params) -> List.of(row("c0", 1L, "c1", "Ann", "c2", null, "c3", null)));
+
+        Person person = session.findById(Person.class, 1L).orElseThrow();
+
+        assertNull(person.country);
+    }
+}
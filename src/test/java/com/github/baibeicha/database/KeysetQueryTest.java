@@ -0,0 +1,187 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.page.Page;
+import com.github.baibeicha.database.page.PageRequest;
+import com.github.baibeicha.database.page.Slice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetQueryTest {
+
+    @Entity
+    @Table(name = "event")
+    static class Event {
+        @Id
+        Long id;
+        long time;
+    }
+
+    private TestDriver driver;
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        db = new Database(TestDriver.dataSource(), 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        db.close();
+    }
+
+    /**
+     * Таблица event из {@code count} строк: id по порядку, запрос читает строки
+     * с id больше параметра до LIMIT.
+     */
+    private void table(int count) {
+        driver.onQuery((sql, params) -> {
+            if (sql.startsWith("SELECT COUNT(*)")) {
+                return List.of(row("count", (long) count));
+            }
+            long after = params.isEmpty() ? 0 : (Long) params.getFirst();
+            int limit = Integer.parseInt(sql.substring(sql.lastIndexOf("LIMIT ") + 6));
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (long id = after + 1; id <= count && rows.size() < limit; id++) {
+                rows.add(row("id", id, "time", id * 10));
+            }
+            return rows;
+        });
+    }
+
+    private static List<Long> ids(Slice<Event> slice) {
+        return slice.getContent().stream().map(event -> event.id).toList();
+    }
+
+    @Test
+    void firstPageQueriesOneExtraRowWithoutCondition() {
+        KeysetQuery query = new KeysetQuery(db, Event.class, PageRequest.first(2));
+
+        assertEquals("SELECT id, time FROM event ORDER BY id LIMIT 3", query.getSql());
+        assertArrayEquals(new Object[0], query.getParameters());
+    }
+
+    @Test
+    void nextPageContinuesAfterLastId() {
+        KeysetQuery query = new KeysetQuery(db, Event.class, PageRequest.first(2).after(null, 4L));
+
+        assertEquals("SELECT id, time FROM event WHERE id > ? ORDER BY id LIMIT 3", query.getSql());
+        assertArrayEquals(new Object[]{4L}, query.getParameters());
+    }
+
+    @Test
+    void sortFieldUsesDialectKeysetCondition() {
+        PageRequest request = PageRequest.first("time", 2).after(40L, 4L);
+
+        KeysetQuery postgres = new KeysetQuery(db, Event.class, request);
+        assertEquals("SELECT id, time FROM event WHERE (time, id) > (?, ?) ORDER BY time, id LIMIT 3",
+                postgres.getSql());
+        assertArrayEquals(new Object[]{40L, 4L}, postgres.getParameters());
+    }
+
+    @Test
+    void sortFieldWithoutRowComparisonRepeatsValue() throws Exception {
+        db.close();
+        db = new Database(TestDriver.dataSource(DatabaseType.MYSQL), 1);
+
+        KeysetQuery query = new KeysetQuery(db, Event.class, PageRequest.first("time", 2).after(40L, 4L));
+
+        assertEquals("SELECT id, time FROM event WHERE (time > ? OR (time = ? AND id > ?)) ORDER BY time, id LIMIT 3",
+                query.getSql());
+        assertArrayEquals(new Object[]{40L, 40L, 4L}, query.getParameters());
+    }
+
+    @Test
+    void unknownSortFieldIsRejected() {
+        assertThrows(DatabaseException.class, () -> new KeysetQuery(db, Event.class, PageRequest.first("missing", 2)));
+    }
+
+    @Test
+    void pageOfExactlySizeRowsHasNoNext() {
+        table(2);
+
+        Slice<Event> slice = db.slice(Event.class, PageRequest.first(2));
+
+        assertEquals(List.of(1L, 2L), ids(slice));
+        assertFalse(slice.hasNext());
+        assertNull(slice.nextRequest());
+    }
+
+    @Test
+    void extraRowIsDroppedAndStartsNextPage() {
+        table(3);
+
+        Slice<Event> slice = db.slice(Event.class, PageRequest.first("time", 2));
+
+        assertEquals(List.of(1L, 2L), ids(slice));
+        assertTrue(slice.hasNext());
+        assertEquals(new PageRequest("time", 20L, 2L, 2), slice.nextRequest());
+    }
+
+    @Test
+    void emptyTableGivesEmptyLastPage() {
+        table(0);
+
+        Slice<Event> slice = db.slice(Event.class, PageRequest.first(2));
+
+        assertTrue(slice.isEmpty());
+        assertFalse(slice.hasNext());
+    }
+
+    @Test
+    void pagesCoverTableWithoutGapsOrRepeats() {
+        table(5);
+
+        Slice<Event> first = db.slice(Event.class, PageRequest.first(2));
+        Slice<Event> second = db.slice(Event.class, first.nextRequest());
+        Slice<Event> last = db.slice(Event.class, second.nextRequest());
+
+        assertEquals(List.of(1L, 2L), ids(first));
+        assertEquals(List.of(3L, 4L), ids(second));
+        assertEquals(List.of(5L), ids(last));
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    void iteratorStopsAtPageWithoutExtraRow() {
+        table(4);
+
+        List<Long> ids = new ArrayList<>();
+        Iterator<Event> events = db.iterate(Event.class, PageRequest.first(2));
+        events.forEachRemaining(event -> ids.add(event.id));
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids);
+        assertEquals(List.of(
+                "SELECT id, time FROM event ORDER BY id LIMIT 3 []",
+                "SELECT id, time FROM event WHERE id > ? ORDER BY id LIMIT 3 [2]"), driver.log("SELECT id"));
+    }
+
+    @Test
+    void pageCountsTotalPages() {
+        table(5);
+
+        Page<Event> page = db.page(Event.class, PageRequest.first(2));
+
+        assertEquals(5, page.getTotalElements());
+        assertEquals(3, page.getTotalPages());
+        assertEquals(List.of(1L, 2L), ids(page));
+    }
+}
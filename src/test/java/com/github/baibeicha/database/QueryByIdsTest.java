@@ -0,0 +1,86 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.List;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryByIdsTest {
+
+    @Entity
+    @Table(name = "account")
+    static class Account {
+        @Id
+        Long id;
+        String name;
+    }
+
+    @Entity
+    @Table(name = "rate")
+    static class Rate {
+        @Id
+        BigDecimal id;
+        String name;
+    }
+
+    private TestDriver driver;
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        db = new Database(TestDriver.dataSource(), 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void supportedIdTypeUsesSingleArrayParameter() throws Exception {
+        driver.onQuery((sql, params) -> List.of(row("id", 1L, "name", "a"), row("id", 2L, "name", "b")));
+
+        List<Account> accounts;
+        try (Connection conn = db.getConnection()) {
+            accounts = db.queryByIds(conn, null, Account.class, List.of(1L, 2L));
+        }
+
+        assertEquals(2, accounts.size());
+        assertEquals(List.of("SELECT id, name FROM account WHERE id = ANY(?) [[1, 2]]"), driver.log("SELECT"));
+    }
+
+    @Test
+    void unsupportedIdTypeFallsBackToParameterPerValue() throws Exception {
+        BigDecimal first = new BigDecimal("1.5");
+        BigDecimal second = new BigDecimal("2.5");
+        driver.onQuery((sql, params) -> List.of(row("id", first, "name", "a"), row("id", second, "name", "b")));
+
+        List<Rate> rates;
+        try (Connection conn = db.getConnection()) {
+            rates = db.queryByIds(conn, null, Rate.class, List.of(first, second));
+        }
+
+        assertEquals(2, rates.size());
+        assertEquals(second, rates.get(1).id);
+        assertEquals(List.of("SELECT id, name FROM rate WHERE id IN (?, ?) [1.5, 2.5]"), driver.log("SELECT"));
+    }
+
+    @Test
+    void mixedIdClassesFallBackToParameterPerValue() throws Exception {
+        try (Connection conn = db.getConnection()) {
+            db.queryByIds(conn, null, Account.class, List.of(1L, 2));
+        }
+
+        assertEquals(List.of("SELECT id, name FROM account WHERE id IN (?, ?) [1, 2]"), driver.log("SELECT"));
+    }
+}
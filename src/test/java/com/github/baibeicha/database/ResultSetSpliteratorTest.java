@@ -0,0 +1,94 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.ManyToOne;
+import com.github.baibeicha.database.annotation.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResultSetSpliteratorTest {
+
+    @Entity
+    @Table(name = "author")
+    static class Author {
+        @Id
+        Long id;
+        String name;
+    }
+
+    @Entity
+    @Table(name = "book")
+    static class Book {
+        @Id
+        Long id;
+        @ManyToOne(joinColumn = "author_id")
+        Author author;
+    }
+
+    private TestDriver driver;
+    private Database db;
+
+    @BeforeEach
+    void setUp() {
+        driver = TestDriver.install();
+        driver.onQuery((sql, params) -> {
+            if (sql.contains("FROM author")) {
+                return List.of(row("id", 7L, "name", "a"));
+            }
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (long i = 0; i < 3; i++) {
+                rows.add(row("id", i, "author_id", 7L));
+            }
+            return rows;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        db.close();
+    }
+
+    private List<Book> streamBooks() {
+        try (Stream<Book> books = db.stream("SELECT * FROM book", Book.class)) {
+            return books.toList();
+        }
+    }
+
+    @Test
+    void postgresReadsByFetchSizeInTransaction() throws Exception {
+        db = new Database(TestDriver.dataSource(DatabaseType.POSTGRESQL), 2);
+
+        List<Book> books = streamBooks();
+
+        assertEquals(3, books.size());
+        assertEquals("a", books.getLast().author.name);
+        assertEquals("FETCH SIZE " + Database.STREAM_FETCH_SIZE, driver.log("FETCH SIZE").getFirst());
+        assertEquals(List.of("autocommit=false", "COMMIT", "autocommit=true"), driver.log().stream()
+                .filter(line -> line.startsWith("autocommit") || line.equals("COMMIT")).toList());
+        assertEquals(1, driver.openedConnections());
+    }
+
+    @Test
+    void mysqlStreamsRowByRowAndLoadsRelationsOnAnotherConnection() throws Exception {
+        db = new Database(TestDriver.dataSource(DatabaseType.MYSQL), 2);
+
+        List<Book> books = streamBooks();
+
+        assertEquals(3, books.size());
+        assertEquals("a", books.getFirst().author.name);
+        assertEquals("FETCH SIZE " + Integer.MIN_VALUE, driver.log("FETCH SIZE").getFirst());
+        assertEquals(List.of(), driver.log("autocommit"));
+        assertEquals(2, driver.openedConnections());
+        assertEquals(0, db.getPoolStatistics().active());
+    }
+}
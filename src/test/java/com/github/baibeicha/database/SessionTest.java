@@ -0,0 +1,195 @@
+package com.github.baibeicha.database;
+
+import com.github.baibeicha.database.annotation.Basic;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.FetchType;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.annotation.Version;
+import com.github.baibeicha.database.exception.DatabaseException;
+import com.github.baibeicha.database.exception.OptimisticLockException;
+import com.github.baibeicha.database.lazy.LazyValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.util.List;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SessionTest {
+
+    @Entity
+    @Table(name = "item")
+    static class Item {
+        @Id
+        Long id;
+        String name;
+        @Version
+        Long version;
+    }
+
+    @Entity
+    @Table(name = "tag")
+    static class Tag {
+        @Id
+        Long id;
+        String name;
+
+        Tag() {
+        }
+
+        Tag(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    @Entity
+    @Table(name = "note")
+    static class Note {
+        @Id
+        Long id;
+        @Basic(fetch = FetchType.LAZY)
+        LazyValue<String> text;
+
+        Note(Long id, LazyValue<String> text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    private TestDriver driver;
+    private Database db;
+    private Session session;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        driver.onQuery((sql, params) -> List.of(row("id", 1L, "name", "a", "version", 3L)));
+        db = new Database(TestDriver.dataSource(), 2);
+        session = db.getSession();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        session.close();
+        db.close();
+    }
+
+    private Item loadAndRename() throws Exception {
+        session.beginTransaction();
+        Item item = session.findById(Item.class, 1L).orElseThrow();
+        item.name = "b";
+        return item;
+    }
+
+    @Test
+    void commitIncrementsVersion() throws Exception {
+        Item item = loadAndRename();
+
+        session.commit();
+
+        assertEquals(4L, item.version);
+        assertEquals(List.of("BATCH UPDATE item SET name = ?, version = version + 1 WHERE id = ? AND version = ? [[b, 1, 3]]"),
+                driver.log("BATCH"));
+    }
+
+    @Test
+    void failedCommitRestoresVersionForRetry() throws Exception {
+        Item item = loadAndRename();
+        driver.failCommit(true);
+
+        assertThrows(DatabaseException.class, session::commit);
+
+        assertEquals(3L, item.version);
+        assertEquals("ROLLBACK", driver.log().get(driver.log().size() - 2));
+
+        driver.failCommit(false);
+        driver.clearLog();
+        try (Connection conn = db.getConnection()) {
+            db.executeUpdate(conn, item);
+        }
+
+        assertEquals(4L, item.version);
+        assertEquals(List.of("UPDATE item SET name = ?, version = version + 1 WHERE id = ? AND version = ? [b, 1, 3]"),
+                driver.log("UPDATE"));
+    }
+
+    @Test
+    void optimisticLockFailureKeepsVersion() throws Exception {
+        Item item = loadAndRename();
+        driver.onUpdate((sql, params) -> 0);
+
+        assertThrows(OptimisticLockException.class, session::commit);
+
+        assertEquals(3L, item.version);
+        assertEquals(List.of(), driver.log("COMMIT"));
+        assertEquals(List.of("ROLLBACK"), driver.log("ROLLBACK"));
+    }
+
+    @Test
+    void laterFailureInFlushRestoresVersionOfUpdatedEntities() throws Exception {
+        Item item = loadAndRename();
+        Item removed = new Item();
+        removed.id = 2L;
+        removed.version = 5L;
+        session.remove(removed);
+        driver.failOn(sql -> sql.startsWith("DELETE"));
+
+        assertThrows(DatabaseException.class, session::commit);
+
+        assertEquals(3L, item.version);
+        assertEquals(5L, removed.version);
+    }
+
+    @Test
+    void mergeCopiesStateOntoManagedInstance() throws Exception {
+        session.beginTransaction();
+        Tag managed = session.findById(Tag.class, 1L).orElseThrow();
+        Tag detached = new Tag(1L, "b");
+
+        Tag merged = session.merge(detached);
+
+        assertSame(managed, merged);
+        assertEquals("b", managed.name);
+        assertSame(managed, session.findById(Tag.class, 1L).orElseThrow());
+
+        driver.clearLog();
+        session.commit();
+        assertEquals(List.of(), driver.log("BATCH UPDATE"));
+    }
+
+    @Test
+    void mergeAllReturnsManagedInstancesInOrder() throws Exception {
+        Tag managed = session.findById(Tag.class, 1L).orElseThrow();
+        Tag created = new Tag(2L, "c");
+
+        List<Tag> merged = session.mergeAll(List.of(new Tag(1L, "b"), created));
+
+        assertSame(managed, merged.get(0));
+        assertSame(created, merged.get(1));
+        assertEquals("b", managed.name);
+        assertSame(created, session.findById(Tag.class, 2L).orElseThrow());
+    }
+
+    @Test
+    void mergeDoesNotLoadLazyValues() throws Exception {
+        Note unloaded = new Note(1L, LazyValue.lazy(() -> {
+            throw new AssertionError("lazy value loaded");
+        }));
+        Note changed = new Note(2L, LazyValue.of("b"));
+
+        session.mergeAll(List.of(unloaded, changed));
+
+        assertEquals(List.of(
+                "BATCH INSERT INTO note (id) VALUES (?) ON CONFLICT (id) DO UPDATE SET id = EXCLUDED.id [[1]]",
+                "BATCH INSERT INTO note (id, text) VALUES (?, ?) ON CONFLICT (id) DO UPDATE SET text = EXCLUDED.text [[2, b]]"),
+                driver.log("BATCH"));
+        assertEquals(List.of(), driver.log("SELECT"));
+    }
+}
@@ -0,0 +1,472 @@
+package com.github.baibeicha.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * JDBC драйвер для тестов без бд: подключения и запросы - прокси, результаты запросов
+ * задаются обработчиком, выполненные запросы записываются в {@link #log()}.
+ * <p>
+ * Драйвер регистрируется вместо настоящих драйверов PostgreSQL и MySQL, поэтому
+ * {@link Database} работает с ним через обычный {@link DataSource}.
+ */
+public final class TestDriver implements Driver {
+
+    /**
+     * Строки результата запроса: SQL и параметры -> строки, колонки строки по порядку.
+     */
+    public interface QueryHandler extends BiFunction<String, List<Object>, List<Map<String, Object>>> {
+    }
+
+    private static final TestDriver INSTANCE = new TestDriver();
+    private static boolean registered;
+
+    private volatile QueryHandler queries;
+    private volatile BiFunction<String, List<Object>, Integer> updateCounts;
+    private volatile Predicate<String> failingSql;
+    private volatile boolean failCommit;
+    private volatile boolean failRollback;
+    private final List<String> log = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicInteger prepared = new AtomicInteger();
+
+    private TestDriver() {
+    }
+
+    /**
+     * Зарегистрировать драйвер и сбросить его состояние.
+     * @return драйвер.
+     */
+    public static synchronized TestDriver install() {
+        if (!registered) {
+            try {
+                for (Driver driver : Collections.list(DriverManager.getDrivers())) {
+                    DriverManager.deregisterDriver(driver);
+                }
+                DriverManager.registerDriver(INSTANCE);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+            registered = true;
+        }
+        INSTANCE.reset();
+        return INSTANCE;
+    }
+
+    private void reset() {
+        queries = (sql, params) -> List.of();
+        updateCounts = (sql, params) -> 1;
+        failingSql = sql -> false;
+        failCommit = false;
+        failRollback = false;
+        log.clear();
+        opened.set(0);
+        closed.set(0);
+        prepared.set(0);
+    }
+
+    public static DataSource dataSource(DatabaseType type) {
+        return DataSource.builder().type(type).host("localhost").port(1)
+                .database("test").username("test").password("test").build();
+    }
+
+    public static DataSource dataSource() {
+        return dataSource(DatabaseType.POSTGRESQL);
+    }
+
+    /**
+     * Строка результата из пар колонка-значение.
+     */
+    public static Map<String, Object> row(Object... columnsAndValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    public TestDriver onQuery(QueryHandler queries) {
+        this.queries = queries;
+        return this;
+    }
+
+    /**
+     * @param updateCounts количество изменённых строк для каждого выполнения UPDATE/DELETE/INSERT.
+     */
+    public TestDriver onUpdate(BiFunction<String, List<Object>, Integer> updateCounts) {
+        this.updateCounts = updateCounts;
+        return this;
+    }
+
+    /**
+     * Выполнение подходящих запросов бросает SQLException.
+     */
+    public TestDriver failOn(Predicate<String> failingSql) {
+        this.failingSql = failingSql;
+        return this;
+    }
+
+    public TestDriver failCommit(boolean failCommit) {
+        this.failCommit = failCommit;
+        return this;
+    }
+
+    public TestDriver failRollback(boolean failRollback) {
+        this.failRollback = failRollback;
+        return this;
+    }
+
+    /**
+     * @return выполненные запросы в виде {@code "sql [params]"}, пакеты - {@code "BATCH sql [[params], ...]"},
+     * а также COMMIT, ROLLBACK и изменения autocommit.
+     */
+    public List<String> log() {
+        synchronized (log) {
+            return new ArrayList<>(log);
+        }
+    }
+
+    /**
+     * @return выполненные запросы, начинающиеся с {@code prefix}.
+     */
+    public List<String> log(String prefix) {
+        return log().stream().filter(line -> line.startsWith(prefix)).toList();
+    }
+
+    public void clearLog() {
+        log.clear();
+    }
+
+    public int openedConnections() {
+        return opened.get();
+    }
+
+    public int closedConnections() {
+        return closed.get();
+    }
+
+    public int preparedStatements() {
+        return prepared.get();
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        opened.incrementAndGet();
+        ConnectionState state = new ConnectionState();
+        Connection[] self = new Connection[1];
+        self[0] = proxy(Connection.class, (proxy, method, args) -> switch (method.getName()) {
+            case "prepareStatement" -> {
+                checkOpen(state);
+                prepared.incrementAndGet();
+                yield statement(self[0], (String) args[0]);
+            }
+            case "close" -> {
+                if (!state.closed) {
+                    state.closed = true;
+                    closed.incrementAndGet();
+                }
+                yield null;
+            }
+            case "abort" -> {
+                state.closed = true;
+                closed.incrementAndGet();
+                log.add("ABORT");
+                yield null;
+            }
+            case "isClosed" -> state.closed;
+            case "isValid" -> !state.closed;
+            case "setAutoCommit" -> {
+                checkOpen(state);
+                state.autoCommit = (Boolean) args[0];
+                log.add("autocommit=" + args[0]);
+                yield null;
+            }
+            case "getAutoCommit" -> state.autoCommit;
+            case "commit" -> {
+                checkOpen(state);
+                if (failCommit) {
+                    throw new SQLException("commit failed");
+                }
+                log.add("COMMIT");
+                yield null;
+            }
+            case "rollback" -> {
+                if (failRollback) {
+                    throw new SQLException("rollback failed");
+                }
+                log.add("ROLLBACK");
+                yield null;
+            }
+            case "createArrayOf" -> array((Object[]) args[1]);
+            case "getTransactionIsolation" -> Connection.TRANSACTION_READ_COMMITTED;
+            case "isReadOnly", "isWrapperFor" -> false;
+            default -> objectMethod(proxy, method, args, "TestConnection");
+        });
+        return self[0];
+    }
+
+    private static final class ConnectionState {
+        volatile boolean closed;
+        volatile boolean autoCommit = true;
+    }
+
+    private static final class StatementState {
+        final List<Object> parameters = new ArrayList<>();
+        final List<List<Object>> batch = new ArrayList<>();
+        List<Map<String, Object>> generatedKeys = List.of();
+        ResultSet resultSet;
+        int fetchSize;
+        int maxRows;
+        int queryTimeout;
+        boolean closed;
+    }
+
+    private static void checkOpen(ConnectionState state) throws SQLException {
+        if (state.closed) {
+            throw new SQLException("Connection is closed");
+        }
+    }
+
+    private PreparedStatement statement(Connection connection, String sql) {
+        StatementState state = new StatementState();
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index
+                    && !name.equals("setFetchSize") && !name.equals("setMaxRows") && !name.equals("setQueryTimeout")) {
+                while (state.parameters.size() < index) {
+                    state.parameters.add(null);
+                }
+                Object value = name.equals("setNull") ? null : args[1];
+                if (value instanceof Array array) {
+                    value = Arrays.asList((Object[]) array.getArray());
+                }
+                state.parameters.set(index - 1, value);
+                return null;
+            }
+            return switch (name) {
+                case "executeQuery" -> {
+                    execute(sql, state.parameters);
+                    state.resultSet = resultSet((Statement) proxy,
+                            queries.apply(sql, new ArrayList<>(state.parameters)));
+                    yield state.resultSet;
+                }
+                case "executeUpdate" -> {
+                    execute(sql, state.parameters);
+                    state.generatedKeys = queries.apply(sql, new ArrayList<>(state.parameters));
+                    yield updateCounts.apply(sql, new ArrayList<>(state.parameters));
+                }
+                case "addBatch" -> {
+                    state.batch.add(new ArrayList<>(state.parameters));
+                    yield null;
+                }
+                case "executeBatch" -> {
+                    log.add("BATCH " + sql + " " + state.batch);
+                    if (failingSql.test(sql)) {
+                        state.batch.clear();
+                        throw new SQLException("failed: " + sql);
+                    }
+                    List<Map<String, Object>> keys = new ArrayList<>();
+                    int[] counts = new int[state.batch.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        keys.addAll(queries.apply(sql, state.batch.get(i)));
+                        counts[i] = updateCounts.apply(sql, state.batch.get(i));
+                    }
+                    state.generatedKeys = keys;
+                    state.batch.clear();
+                    yield counts;
+                }
+                case "getGeneratedKeys" -> resultSet((Statement) proxy, state.generatedKeys);
+                case "getResultSet" -> state.resultSet;
+                case "clearParameters" -> {
+                    state.parameters.clear();
+                    yield null;
+                }
+                case "clearBatch" -> {
+                    state.batch.clear();
+                    yield null;
+                }
+                case "setFetchSize" -> {
+                    state.fetchSize = (Integer) args[0];
+                    log.add("FETCH SIZE " + state.fetchSize);
+                    yield null;
+                }
+                case "getFetchSize" -> state.fetchSize;
+                case "setMaxRows" -> {
+                    state.maxRows = (Integer) args[0];
+                    yield null;
+                }
+                case "getMaxRows" -> state.maxRows;
+                case "setQueryTimeout" -> {
+                    state.queryTimeout = (Integer) args[0];
+                    yield null;
+                }
+                case "getQueryTimeout" -> state.queryTimeout;
+                case "getConnection" -> connection;
+                case "close" -> {
+                    state.closed = true;
+                    yield null;
+                }
+                case "isClosed" -> state.closed;
+                case "getUpdateCount" -> -1;
+                case "clearWarnings" -> null;
+                default -> objectMethod(proxy, method, args, "TestStatement[" + sql + "]");
+            };
+        });
+    }
+
+    private void execute(String sql, List<Object> parameters) throws SQLException {
+        log.add(sql + " " + parameters);
+        if (failingSql.test(sql)) {
+            throw new SQLException("failed: " + sql);
+        }
+    }
+
+    private static Array array(Object[] values) {
+        return proxy(Array.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getArray" -> values;
+            default -> objectMethod(proxy, method, args, Arrays.toString(values));
+        });
+    }
+
+    static ResultSet resultSet(Statement statement, List<Map<String, Object>> rows) {
+        List<String> columns = rows.isEmpty() ? List.of() : new ArrayList<>(rows.getFirst().keySet());
+        int[] position = {-1};
+        boolean[] wasNull = {false};
+        boolean[] closed = {false};
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getColumnCount" -> columns.size();
+            case "getColumnLabel", "getColumnName" -> columns.get((Integer) args[0] - 1);
+            default -> objectMethod(proxy, method, args, "TestResultSetMetaData");
+        });
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            String name = method.getName();
+            switch (name) {
+                case "next":
+                    return ++position[0] < rows.size();
+                case "getMetaData":
+                    return metaData;
+                case "wasNull":
+                    return wasNull[0];
+                case "close":
+                    closed[0] = true;
+                    return null;
+                case "isClosed":
+                    return closed[0];
+                case "getStatement":
+                    return statement;
+                case "getFetchSize":
+                    return 0;
+                default:
+                    break;
+            }
+            if (!name.startsWith("get") || args == null || args.length == 0) {
+                return objectMethod(proxy, method, args, "TestResultSet");
+            }
+            Map<String, Object> row = rows.get(position[0]);
+            Object value;
+            if (args[0] instanceof Integer index) {
+                value = row.get(columns.get(index - 1));
+            } else {
+                String column = columns.stream().filter(c -> c.equalsIgnoreCase((String) args[0]))
+                        .findFirst().orElseThrow(() -> new SQLException("No column " + args[0]));
+                value = row.get(column);
+            }
+            wasNull[0] = value == null;
+            return switch (name) {
+                case "getInt" -> value == null ? 0 : ((Number) value).intValue();
+                case "getLong" -> value == null ? 0L : ((Number) value).longValue();
+                case "getDouble" -> value == null ? 0d : ((Number) value).doubleValue();
+                case "getBoolean" -> value != null && (value instanceof Boolean b ? b : ((Number) value).intValue() != 0);
+                case "getString" -> value == null ? null : value.toString();
+                case "getObject" -> args.length == 2 && value != null ? ((Class<?>) args[1]).cast(value) : value;
+                default -> value;
+            };
+        });
+    }
+
+    /**
+     * Методы Object и значения по умолчанию для остальных методов.
+     */
+    private static Object objectMethod(Object proxy, Method method, Object[] args, String text) {
+        return switch (method.getName()) {
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> text;
+            default -> defaultValue(method.getReturnType());
+        };
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return type.isPrimitive() && type != void.class ? 0 : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(TestDriver.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url.startsWith("jdbc:postgresql:") || url.startsWith("jdbc:mysql:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return Logger.getGlobal();
+    }
+}
@@ -0,0 +1,182 @@
+package com.github.baibeicha.database.cache;
+
+import com.github.baibeicha.database.Database;
+import com.github.baibeicha.database.TestDriver;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryCacheTest {
+
+    private static final Object[] NO_PARAMS = {};
+
+    @Entity
+    @Table(name = "account")
+    static class Account {
+        @Id
+        Long id;
+        String name;
+    }
+
+    private final QueryCache cache = new QueryCache(10, Duration.ZERO);
+
+    private void put(String sql, Object... params) {
+        cache.put(sql, Long.class, params, List.of(1L), cache.version());
+    }
+
+    @Test
+    void resultIsCachedByTextParametersAndType() {
+        put("SELECT COUNT(*) FROM account WHERE name = ?", "a");
+
+        assertEquals(List.of(1L), cache.get("SELECT COUNT(*) FROM account WHERE name = ?", Long.class, "a"));
+        assertNull(cache.get("SELECT COUNT(*) FROM account WHERE name = ?", Long.class, "b"));
+        assertNull(cache.get("SELECT COUNT(*) FROM account WHERE name = ?", Integer.class, "a"));
+    }
+
+    @Test
+    void cachedResultIsImmutable() {
+        put("SELECT id FROM account");
+
+        List<Long> rows = cache.get("SELECT id FROM account", Long.class);
+        assertThrows(UnsupportedOperationException.class, () -> rows.add(2L));
+    }
+
+    @Test
+    void invalidateRemovesOnlyQueriesReadingTable() {
+        put("SELECT COUNT(*) FROM account a JOIN audit l ON l.account_id = a.id");
+        put("SELECT COUNT(*) FROM orders, \"Audit\"");
+        put("SELECT COUNT(*) FROM product");
+
+        cache.invalidate("public.AUDIT");
+
+        assertNull(cache.get("SELECT COUNT(*) FROM account a JOIN audit l ON l.account_id = a.id", Long.class));
+        assertNull(cache.get("SELECT COUNT(*) FROM orders, \"Audit\"", Long.class));
+        assertEquals(List.of(1L), cache.get("SELECT COUNT(*) FROM product", Long.class));
+    }
+
+    @Test
+    void modifyingSqlInvalidatesItsTables() {
+        put("SELECT COUNT(*) FROM account");
+        put("SELECT COUNT(*) FROM product");
+
+        cache.invalidateTablesOf("UPDATE account SET name = 'FROM product' WHERE id = ?");
+
+        assertNull(cache.get("SELECT COUNT(*) FROM account", Long.class));
+        assertEquals(List.of(1L), cache.get("SELECT COUNT(*) FROM product", Long.class));
+
+        cache.invalidateTablesOf("INSERT INTO product (name) SELECT name FROM account");
+        assertNull(cache.get("SELECT COUNT(*) FROM product", Long.class));
+    }
+
+    @Test
+    void resultReadBeforeInvalidationIsNotCached() {
+        long version = cache.version();
+        cache.invalidate("account");
+
+        List<Long> rows = cache.put("SELECT COUNT(*) FROM account", Long.class, NO_PARAMS, List.of(1L), version);
+
+        assertEquals(List.of(1L), rows);
+        assertNull(cache.get("SELECT COUNT(*) FROM account", Long.class));
+    }
+
+    @Test
+    void clearRemovesEverything() {
+        put("SELECT COUNT(*) FROM account");
+
+        cache.clear();
+
+        assertNull(cache.get("SELECT COUNT(*) FROM account", Long.class));
+    }
+
+    @Test
+    void expiredResultIsMissed() throws Exception {
+        QueryCache shortLived = new QueryCache(10, Duration.ofMillis(20));
+        shortLived.put("SELECT COUNT(*) FROM account", Long.class, NO_PARAMS, List.of(1L), shortLived.version());
+
+        Thread.sleep(50);
+
+        assertNull(shortLived.get("SELECT COUNT(*) FROM account", Long.class));
+    }
+
+    @Test
+    void leastRecentlyUsedResultIsEvicted() {
+        QueryCache small = new QueryCache(2, Duration.ZERO);
+        small.put("SELECT 1 FROM a", Long.class, NO_PARAMS, List.of(1L), small.version());
+        small.put("SELECT 1 FROM b", Long.class, NO_PARAMS, List.of(1L), small.version());
+        small.get("SELECT 1 FROM a", Long.class);
+        small.put("SELECT 1 FROM c", Long.class, NO_PARAMS, List.of(1L), small.version());
+
+        assertNull(small.get("SELECT 1 FROM b", Long.class));
+        assertEquals(List.of(1L), small.get("SELECT 1 FROM a", Long.class));
+        assertEquals(1, small.getStatistics().evictions());
+    }
+
+    private TestDriver driver;
+    private Database db;
+    private final AtomicLong count = new AtomicLong();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        driver.onQuery((sql, params) -> sql.startsWith("SELECT COUNT(*)") ?
+                List.of(row("count", count.get())) :
+                List.of(row("id", 1L, "name", "a")));
+        db = new Database(TestDriver.dataSource(), 1);
+        db.enableQueryCache(10, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void databaseCachesProjectionsUntilUpdate() {
+        count.set(1);
+        assertEquals(List.of(1L), db.queryForList("SELECT COUNT(*) FROM account", Long.class));
+        count.set(2);
+        assertEquals(List.of(1L), db.queryForList("SELECT COUNT(*) FROM account", Long.class));
+
+        db.update("DELETE FROM account WHERE id = ?", 5L);
+
+        assertEquals(List.of(2L), db.queryForList("SELECT COUNT(*) FROM account", Long.class));
+        assertEquals(2, driver.log("SELECT COUNT(*)").size());
+    }
+
+    @Test
+    void databaseInvalidatesOnEntityWrites() throws Exception {
+        List<Long> before = db.queryForList("SELECT COUNT(*) FROM account", Long.class);
+        assertSame(before, db.queryForList("SELECT COUNT(*) FROM account", Long.class));
+
+        Account account = new Account();
+        account.name = "b";
+        try (Connection conn = db.getConnection()) {
+            db.executeInsert(conn, account);
+        }
+        db.queryForList("SELECT COUNT(*) FROM account", Long.class);
+
+        assertEquals(2, driver.log("SELECT COUNT(*)").size());
+    }
+
+    @Test
+    void databaseDoesNotCacheEntities() {
+        db.queryForList("SELECT id, name FROM account", Account.class);
+        db.queryForList("SELECT id, name FROM account", Account.class);
+
+        assertEquals(2, driver.log("SELECT id, name").size());
+    }
+}
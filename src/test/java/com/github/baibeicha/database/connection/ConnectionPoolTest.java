@@ -0,0 +1,267 @@
+package com.github.baibeicha.database.connection;
+
+import com.github.baibeicha.database.TestDriver;
+import com.github.baibeicha.database.exception.DatabaseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+
+    private static final String URL = "jdbc:postgresql://localhost:1/test";
+
+    private TestDriver driver;
+    private final List<ConnectionPool> pools = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        driver = TestDriver.install();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (ConnectionPool pool : pools) {
+            pool.shutdown();
+        }
+    }
+
+    private ConnectionPool pool(ConnectionPoolConfig.Builder config) throws Exception {
+        ConnectionPool pool = ConnectionPool.create(URL, "test", "test", config.build());
+        pools.add(pool);
+        return pool;
+    }
+
+    /**
+     * Физическое подключение выдачи: без кеша statement пул отдаёт statement драйвера.
+     */
+    private static Connection physical(Connection connection) throws Exception {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+            return statement.getConnection();
+        }
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("condition not reached in 5 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void acquireTimesOutWhenPoolIsExhausted() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode)
+                    .maxPoolSize(1).acquireTimeout(Duration.ofMillis(100)));
+            Connection held = pool.getConnection();
+
+            long start = System.nanoTime();
+            DatabaseException e = assertThrows(DatabaseException.class, pool::getConnection);
+
+            assertTrue(e.getMessage().startsWith("Timed out after 100 ms"), e.getMessage());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            assertEquals(0, pool.getPoolStatistics().waiting());
+            held.close();
+            pool.getConnection().close();
+        }
+    }
+
+    @Test
+    void releasedConnectionIsReusedAndWakesWaiter() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode).maxPoolSize(1));
+            Connection held = pool.getConnection();
+            Connection physical = physical(held);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Connection> waiter = executor.submit(() -> {
+                    try (Connection next = pool.getConnection()) {
+                        return physical(next);
+                    }
+                });
+                awaitCondition(() -> pool.getPoolStatistics().waiting() == 1);
+
+                held.close();
+
+                assertSame(physical, waiter.get(5, TimeUnit.SECONDS));
+                assertTrue(held.isClosed());
+                assertEquals(new ConnectionPoolStatistics(1, 1, 0, 0, 1, 0, 0, 0), pool.getPoolStatistics());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void concurrentBorrowersNeverShareConnection() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode).maxPoolSize(4));
+            Map<Connection, Boolean> inUse = new ConcurrentHashMap<>();
+            AtomicInteger overlaps = new AtomicInteger();
+            int threads = 16;
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    tasks.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 2000; i++) {
+                            try (Connection conn = pool.getConnection()) {
+                                Connection physical = physical(conn);
+                                if (inUse.putIfAbsent(physical, Boolean.TRUE) != null) {
+                                    overlaps.incrementAndGet();
+                                }
+                                inUse.remove(physical);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> task : tasks) {
+                    task.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertEquals(0, overlaps.get(), mode.name());
+            ConnectionPoolStatistics statistics = pool.getPoolStatistics();
+            assertTrue(statistics.total() <= 4, statistics.toString());
+            assertEquals(0, statistics.active(), statistics.toString());
+            assertEquals(statistics.total(), statistics.idle(), statistics.toString());
+        }
+        assertTrue(driver.openedConnections() <= 8);
+    }
+
+    @Test
+    void brokenConnectionIsRetiredOnRelease() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode).minIdle(0).maxPoolSize(1));
+            Connection conn = pool.getConnection();
+            Connection physical = physical(conn);
+            conn.abort(Runnable::run);
+            conn.close();
+
+            try (Connection next = pool.getConnection()) {
+                assertNotSame(physical, physical(next));
+            }
+            assertEquals(1, pool.getPoolStatistics().brokenClosed());
+        }
+    }
+
+    @Test
+    void expiredConnectionIsReplaced() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode)
+                    .minIdle(0).maxPoolSize(1).maxLifetime(Duration.ofMillis(50)));
+            Connection physical;
+            try (Connection conn = pool.getConnection()) {
+                physical = physical(conn);
+            }
+            Thread.sleep(100);
+
+            try (Connection conn = pool.getConnection()) {
+                assertNotSame(physical, physical(conn));
+            }
+            assertTrue(pool.getPoolStatistics().expiredClosed() >= 1);
+            awaitCondition(() -> isClosed(physical));
+        }
+    }
+
+    @Test
+    void housekeepingClosesIdleConnectionsDownToMinIdle() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode)
+                    .minIdle(1).maxPoolSize(4).idleTimeout(Duration.ofMillis(50))
+                    .housekeepingPeriod(Duration.ofMillis(20)));
+            List<Connection> held = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                held.add(pool.getConnection());
+            }
+            for (Connection conn : held) {
+                conn.close();
+            }
+
+            awaitCondition(() -> pool.getPoolStatistics().total() == 1);
+            ConnectionPoolStatistics statistics = pool.getPoolStatistics();
+            assertEquals(1, statistics.idle());
+            assertEquals(2, statistics.idleClosed());
+        }
+    }
+
+    @Test
+    void housekeepingRefillsToMinIdleAfterBrokenConnections() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode)
+                    .minIdle(2).maxPoolSize(4).validationMode(ValidationMode.WHILE_IDLE)
+                    .housekeepingPeriod(Duration.ofMillis(20)));
+            List<Connection> physical = new ArrayList<>();
+            List<Connection> held = List.of(pool.getConnection(), pool.getConnection());
+            for (Connection conn : held) {
+                physical.add(physical(conn));
+            }
+            for (Connection conn : held) {
+                conn.close();
+            }
+            for (Connection conn : physical) {
+                conn.close();
+            }
+
+            awaitCondition(() -> pool.getPoolStatistics().brokenClosed() == 2
+                    && pool.getPoolStatistics().idle() == 2);
+            try (Connection conn = pool.getConnection()) {
+                assertFalse(physical.contains(physical(conn)));
+            }
+        }
+    }
+
+    @Test
+    void shutdownRejectsBorrowersAndClosesReturnedConnections() throws Exception {
+        for (AcquireMode mode : AcquireMode.values()) {
+            ConnectionPool pool = pool(ConnectionPoolConfig.builder().acquireMode(mode).maxPoolSize(2));
+            Connection held = pool.getConnection();
+            Connection physical = physical(held);
+
+            pool.shutdown();
+
+            assertThrows(DatabaseException.class, pool::getConnection);
+            held.close();
+            awaitCondition(() -> isClosed(physical));
+            assertEquals(0, pool.getPoolStatistics().total());
+        }
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (Exception e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.baibeicha.database.connection;
+
+import com.github.baibeicha.database.Database;
+import com.github.baibeicha.database.TestDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatementCacheTest {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private TestDriver driver;
+    private Connection connection;
+    private Database database;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        connection = DriverManager.getConnection("jdbc:postgresql://localhost:1/test");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    private static StatementCache.Key key(String sql) {
+        return new StatementCache.Key(sql, Statement.NO_GENERATED_KEYS, null);
+    }
+
+    @Test
+    void returnedStatementIsReused() throws Exception {
+        StatementCache cache = new StatementCache(2, hits, misses, evictions);
+        PreparedStatement statement = connection.prepareStatement("SELECT 1");
+
+        assertNull(cache.take(key("SELECT 1")));
+        cache.offer(key("SELECT 1"), statement);
+
+        assertSame(statement, cache.take(key("SELECT 1")));
+        assertNull(cache.take(key("SELECT 1")));
+        assertEquals(1, hits.sum());
+        assertEquals(2, misses.sum());
+    }
+
+    @Test
+    void returnedStatementIsReset() throws Exception {
+        StatementCache cache = new StatementCache(2, hits, misses, evictions);
+        PreparedStatement statement = connection.prepareStatement("INSERT INTO t VALUES (?)");
+        statement.setLong(1, 1L);
+        statement.addBatch();
+        statement.setLong(1, 2L);
+        statement.setFetchSize(100);
+        statement.setMaxRows(10);
+        statement.setQueryTimeout(5);
+
+        cache.offer(key("INSERT INTO t VALUES (?)"), statement);
+        PreparedStatement reused = cache.take(key("INSERT INTO t VALUES (?)"));
+
+        assertEquals(0, reused.getFetchSize());
+        assertEquals(0, reused.getMaxRows());
+        assertEquals(0, reused.getQueryTimeout());
+        reused.executeBatch();
+        assertEquals(List.of("BATCH INSERT INTO t VALUES (?) []"), driver.log("BATCH"));
+        reused.executeUpdate();
+        assertEquals(List.of("INSERT INTO t VALUES (?) []"), driver.log("INSERT"));
+    }
+
+    @Test
+    void leastRecentlyReturnedStatementIsEvicted() throws Exception {
+        StatementCache cache = new StatementCache(2, hits, misses, evictions);
+        PreparedStatement first = connection.prepareStatement("SELECT 1");
+        PreparedStatement second = connection.prepareStatement("SELECT 2");
+        PreparedStatement third = connection.prepareStatement("SELECT 3");
+
+        cache.offer(key("SELECT 1"), first);
+        cache.offer(key("SELECT 2"), second);
+        cache.offer(key("SELECT 3"), third);
+
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        assertEquals(1, evictions.sum());
+        assertNull(cache.take(key("SELECT 1")));
+        assertSame(third, cache.take(key("SELECT 3")));
+    }
+
+    @Test
+    void closedStatementIsNotCached() throws Exception {
+        StatementCache cache = new StatementCache(2, hits, misses, evictions);
+        PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        statement.close();
+
+        cache.offer(key("SELECT 1"), statement);
+
+        assertNull(cache.take(key("SELECT 1")));
+    }
+
+    @Test
+    void closeClosesCachedStatements() throws Exception {
+        StatementCache cache = new StatementCache(2, hits, misses, evictions);
+        PreparedStatement statement = connection.prepareStatement("SELECT 1");
+        cache.offer(key("SELECT 1"), statement);
+
+        cache.close();
+
+        assertTrue(statement.isClosed());
+        assertNull(cache.take(key("SELECT 1")));
+    }
+
+    @Test
+    void poolReusesStatementsAcrossCheckouts() throws Exception {
+        ConnectionPoolConfig config = ConnectionPoolConfig.builder().maxPoolSize(1).statementCacheSize(4).build();
+        database = new Database(TestDriver.dataSource(), config);
+        for (int i = 0; i < 3; i++) {
+            try (Connection conn = database.getConnection();
+                 PreparedStatement statement = conn.prepareStatement("SELECT 1")) {
+                statement.executeQuery();
+            }
+        }
+
+        assertEquals(1, driver.preparedStatements());
+        assertEquals(new StatementCacheStatistics(2, 1, 0), database.getStatementCacheStatistics());
+    }
+
+    @Test
+    void statementIsUnusableAfterConnectionReturned() throws Exception {
+        ConnectionPoolConfig config = ConnectionPoolConfig.builder().maxPoolSize(1).statementCacheSize(4).build();
+        database = new Database(TestDriver.dataSource(), config);
+        Connection conn = database.getConnection();
+        PreparedStatement statement = conn.prepareStatement("SELECT 1");
+        conn.close();
+
+        assertTrue(statement.isClosed());
+        statement.close();
+        try (Connection next = database.getConnection();
+             PreparedStatement fresh = next.prepareStatement("SELECT 1")) {
+            fresh.executeQuery();
+        }
+        assertEquals(2, driver.preparedStatements());
+    }
+}
@@ -0,0 +1,140 @@
+package com.github.baibeicha.database.context;
+
+import com.github.baibeicha.database.Database;
+import com.github.baibeicha.database.TestDriver;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PersistenceContextTest {
+
+    @Entity
+    @Table(name = "customer")
+    static class Customer {
+        @Id
+        Long id;
+        String name;
+
+        Customer(Long id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Customer;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
+
+    @Entity
+    @Table(name = "region")
+    static class Region {
+        @Id
+        int id;
+
+        Region(int id) {
+            this.id = id;
+        }
+    }
+
+    @Entity
+    @Table(name = "country")
+    static class Country {
+        @Id
+        String code;
+
+        Country(String code) {
+            this.code = code;
+        }
+    }
+
+    private Database db;
+    private final PersistenceContext context = new PersistenceContext();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestDriver.install();
+        db = new Database(TestDriver.dataSource(), 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        db.close();
+    }
+
+    private <T> T manage(T entity) {
+        context.manage(entity, db.getIdValue(entity), db);
+        return entity;
+    }
+
+    @Test
+    void entityIsFoundByIdOfDeclaredType() {
+        Customer customer = manage(new Customer(1L));
+        Country country = manage(new Country("de"));
+
+        assertSame(customer, context.getFromCache(Customer.class, 1L));
+        assertSame(country, context.getFromCache(Country.class, "de"));
+        assertNull(context.getFromCache(Customer.class, 2L));
+        assertNull(context.getFromCache(Country.class, 1L));
+    }
+
+    @Test
+    void integralIdOfOtherTypeIsConvertedToDeclaredType() {
+        Customer customer = manage(new Customer(7L));
+        Region region = manage(new Region(7));
+
+        assertSame(customer, context.getFromCache(Customer.class, 7));
+        assertSame(customer, context.getFromCache(Customer.class, (short) 7));
+        assertSame(region, context.getFromCache(Region.class, 7L));
+        assertSame(region, context.getFromCache(Region.class, (byte) 7));
+    }
+
+    @Test
+    void idOutOfDeclaredRangeIsNotTruncated() {
+        manage(new Region(0));
+
+        assertNull(context.getFromCache(Region.class, 1L << 32));
+    }
+
+    @Test
+    void entitiesOfTypeAreKeptApartDespiteEquals() {
+        Customer first = manage(new Customer(1L));
+        Customer second = manage(new Customer(2L));
+
+        assertSame(first, context.getFromCache(Customer.class, 1L));
+        assertSame(second, context.getFromCache(Customer.class, 2L));
+        assertEquals(EntityState.MANAGED, context.getState(first));
+        assertEquals(EntityState.MANAGED, context.getState(second));
+        assertEquals(2, context.getEntityStates().size());
+    }
+
+    @Test
+    void idUsedByFindIsStoredAsDeclaredType() {
+        Customer customer = new Customer(3L);
+        context.manage(customer, 3, db);
+
+        assertSame(customer, context.getFromCache(Customer.class, 3L));
+    }
+
+    @Test
+    void clearForgetsEntities() {
+        Customer customer = manage(new Customer(1L));
+
+        context.clear();
+
+        assertNull(context.getFromCache(Customer.class, 1L));
+        assertNull(context.getState(customer));
+        assertNull(context.getSnapshot(customer));
+    }
+}
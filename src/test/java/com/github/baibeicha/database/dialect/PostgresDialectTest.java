@@ -0,0 +1,45 @@
+package com.github.baibeicha.database.dialect;
+
+import com.github.baibeicha.database.annotation.Column;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.metadata.EntityMetadata;
+import com.github.baibeicha.database.metadata.EntitySqlTemplates;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostgresDialectTest {
+
+    @Entity
+    @Table(name = "account")
+    static class Account {
+        @Id
+        @Column(name = "ACCOUNT_ID")
+        Long id;
+        String name;
+    }
+
+    private final PostgresDialect dialect = new PostgresDialect();
+
+    @Test
+    void generatedKeyColumnIsFoldedToLowerCase() {
+        assertEquals("account_id", dialect.generatedKeyColumn("Account_ID"));
+    }
+
+    @Test
+    void quotedGeneratedKeyColumnKeepsCase() {
+        assertEquals("Account_ID", dialect.generatedKeyColumn("\"Account_ID\""));
+    }
+
+    @Test
+    void templatesUseDialectGeneratedKeyColumn() {
+        EntitySqlTemplates templates = EntitySqlTemplates.of(EntityMetadata.of(Account.class), dialect);
+
+        assertArrayEquals(new String[]{"account_id"}, templates.getGeneratedKeyColumns());
+        assertArrayEquals(new String[]{"ACCOUNT_ID"},
+                EntitySqlTemplates.of(EntityMetadata.of(Account.class), new MySqlDialect()).getGeneratedKeyColumns());
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.baibeicha.database.metadata;
+
+import com.github.baibeicha.database.annotation.Basic;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.FetchType;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.dialect.PostgresDialect;
+import com.github.baibeicha.database.lazy.LazyValue;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntitySqlTemplatesTest {
+
+    @Entity
+    @Table(name = "article")
+    static class Article {
+        @Id
+        Long id;
+        String title;
+        @Basic(fetch = FetchType.LAZY)
+        LazyValue<String> body = LazyValue.lazy(() -> "body");
+    }
+
+    @Entity
+    @Table(name = "tag")
+    static class Tag {
+        @Id
+        Long id;
+        String name;
+    }
+
+    private static EntitySqlTemplates templates(Class<?> type) {
+        return EntitySqlTemplates.of(EntityMetadata.of(type), new PostgresDialect());
+    }
+
+    @Test
+    void entityWithoutLazyColumnsUsesFullUpdate() {
+        EntitySqlTemplates templates = templates(Tag.class);
+
+        assertFalse(templates.hasLazyColumns());
+        assertNull(templates.getUpdateColumns(new Tag()));
+    }
+
+    @Test
+    void unmodifiedLazyColumnsShareOneMask() {
+        EntitySqlTemplates templates = templates(Article.class);
+        BitSet first = templates.getUpdateColumns(new Article());
+
+        assertTrue(templates.hasLazyColumns());
+        assertSame(first, templates.getUpdateColumns(new Article()));
+        assertEquals("UPDATE article SET title = ? WHERE id = ?", templates.getPartialUpdate(first).sql());
+    }
+
+    @Test
+    void modifiedLazyColumnIsUpdated() {
+        EntitySqlTemplates templates = templates(Article.class);
+        Article article = new Article();
+        article.body = LazyValue.of("new body");
+
+        BitSet columns = templates.getUpdateColumns(article);
+
+        assertEquals("UPDATE article SET title = ?, body = ? WHERE id = ?", templates.getPartialUpdate(columns).sql());
+        assertFalse(templates.getUpdateColumns(new Article()).get(2));
+    }
+
+    @Test
+    void unloadedLazyColumnIsLeftOutOfUpsert() {
+        EntitySqlTemplates templates = templates(Article.class);
+        Article article = new Article();
+        article.body = LazyValue.lazy(() -> {
+            throw new AssertionError("lazy value loaded");
+        });
+
+        BitSet columns = templates.getUpsertColumns(article);
+
+        assertSame(columns, templates.getUpsertColumns(new Article()));
+        assertEquals("INSERT INTO article (id, title) VALUES (?, ?) ON CONFLICT (id) DO UPDATE SET title = EXCLUDED.title",
+                templates.getUpsert(new PostgresDialect(), true, columns).sql());
+        assertSame(templates.getUpsert(new PostgresDialect(), true, columns),
+                templates.getUpsert(new PostgresDialect(), true, (BitSet) columns.clone()));
+    }
+
+    @Test
+    void loadedLazyColumnIsUpserted() {
+        EntitySqlTemplates templates = templates(Article.class);
+        Article article = new Article();
+        article.body = LazyValue.loaded("body");
+
+        assertNull(templates.getUpsertColumns(article));
+        assertNull(templates(Tag.class).getUpsertColumns(new Tag()));
+        assertEquals("INSERT INTO article (id, title, body) VALUES (?, ?, ?) ON CONFLICT (id) "
+                        + "DO UPDATE SET title = EXCLUDED.title, body = EXCLUDED.body",
+                templates.getUpsert(new PostgresDialect(), true, null).sql());
+    }
+}
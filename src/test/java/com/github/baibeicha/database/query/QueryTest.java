@@ -0,0 +1,146 @@
+package com.github.baibeicha.database.query;
+
+import com.github.baibeicha.database.Database;
+import com.github.baibeicha.database.TestDriver;
+import com.github.baibeicha.database.annotation.Entity;
+import com.github.baibeicha.database.annotation.Id;
+import com.github.baibeicha.database.annotation.ManyToOne;
+import com.github.baibeicha.database.annotation.Table;
+import com.github.baibeicha.database.exception.DatabaseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.github.baibeicha.database.TestDriver.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryTest {
+
+    @Entity
+    @Table(name = "region")
+    static class Region {
+        @Id
+        Long id;
+        String name;
+    }
+
+    @Entity
+    @Table(name = "country")
+    static class Country {
+        @Id
+        Long id;
+        String code;
+        @ManyToOne(joinColumn = "region_id")
+        Region region;
+    }
+
+    @Entity
+    @Table(name = "users")
+    static class User {
+        @Id
+        Long id;
+        String name;
+        int age;
+        @ManyToOne(joinColumn = "country_id")
+        Country country;
+    }
+
+    private TestDriver driver;
+    private Database db;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = TestDriver.install();
+        driver.onQuery((sql, params) -> sql.startsWith("SELECT COUNT(*)") ? List.of(row("count", 3L)) : List.of());
+        db = new Database(TestDriver.dataSource(), 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        db.close();
+    }
+
+    @Test
+    void selectWithoutCriteriaListsAllColumns() {
+        assertEquals("SELECT t0.id, t0.name, t0.age, t0.country_id FROM users t0", db.select(User.class).toSql());
+    }
+
+    @Test
+    void joinsConditionsOrderAndPagingAreRendered() {
+        db.select(User.class)
+                .join("country")
+                .leftJoin("country.region")
+                .where("country.code", "BY")
+                .where(Condition.gt("age", 18))
+                .where(Condition.or(Condition.like("name", "A%"), Condition.not(Condition.isNull("country.region.name"))))
+                .orderByDesc("country.code")
+                .orderBy("name")
+                .limit(20)
+                .offset(40)
+                .list();
+
+        assertEquals(List.of("SELECT t0.id, t0.name, t0.age, t0.country_id FROM users t0"
+                + " JOIN country t1 ON t1.id = t0.country_id LEFT JOIN region t2 ON t2.id = t1.region_id"
+                + " WHERE t1.code = ? AND t0.age > ? AND (t0.name LIKE ? OR NOT (t2.name IS NULL))"
+                + " ORDER BY t1.code DESC, t0.name LIMIT ? OFFSET ? [BY, 18, A%, 20, 40]"), driver.log("SELECT"));
+    }
+
+    @Test
+    void orderDirectionIsNotParsedFromPath() {
+        assertEquals("SELECT t0.id, t0.name, t0.age, t0.country_id FROM users t0 ORDER BY t0.name DESC, t0.age",
+                db.select(User.class).orderByDesc("name").orderBy("age").toSql());
+        assertThrows(DatabaseException.class, () -> db.select(User.class).orderBy("name DESC").toSql());
+    }
+
+    @Test
+    void inAndEmptyJunctionsAreRendered() {
+        db.select(User.class)
+                .where(Condition.in("id", List.of(1L, 2L)))
+                .where(Condition.in("name", List.of()))
+                .where(Condition.and())
+                .where(Condition.or())
+                .list();
+
+        assertEquals(List.of("SELECT t0.id, t0.name, t0.age, t0.country_id FROM users t0"
+                + " WHERE t0.id = ANY(?) AND 1 = 0 AND 1 = 1 AND 1 = 0 [[1, 2]]"), driver.log("SELECT"));
+    }
+
+    @Test
+    void relationIsComparedById() {
+        Country country = new Country();
+        country.id = 5L;
+
+        db.select(User.class).where("country", country).where(Condition.ne("country", null)).list();
+
+        assertEquals(List.of("SELECT t0.id, t0.name, t0.age, t0.country_id FROM users t0"
+                + " WHERE t0.country_id = ? AND t0.country_id IS NOT NULL [5]"), driver.log("SELECT"));
+    }
+
+    @Test
+    void countIgnoresOrderAndPaging() {
+        long count = db.select(User.class).where("name", null).orderByDesc("name").limit(1).count();
+
+        assertEquals(3, count);
+        assertEquals(List.of("SELECT COUNT(*) FROM users t0 WHERE t0.name IS NULL []"), driver.log("SELECT"));
+    }
+
+    @Test
+    void firstLimitsToOneRow() {
+        db.select(User.class).orderBy("name").first();
+
+        assertEquals(List.of("SELECT t0.id, t0.name, t0.age, t0.country_id FROM users t0 ORDER BY t0.name LIMIT ? [1]"),
+                driver.log("SELECT"));
+    }
+
+    @Test
+    void invalidPathsAreRejected() {
+        assertThrows(DatabaseException.class, () -> db.select(User.class).join("name"));
+        assertThrows(DatabaseException.class, () -> db.select(User.class).join("country.region"));
+        assertThrows(DatabaseException.class, () -> db.select(User.class).join("country").join("country"));
+        assertThrows(DatabaseException.class, () -> db.select(User.class).where("country.code", "BY").toSql());
+        assertThrows(IllegalArgumentException.class, () -> db.select(User.class).limit(-1));
+    }
+}